@@ -23,7 +23,19 @@ public class Console extends TextBox implements CommandListener {
     public void commandAction(Command c, Displayable d) {
         if(c==e && d==i) {
             set(me);
-            lock = true;
+            final String cmd = i.getString();
+            i.setString("");
+            interp.eventLoop().post(new Runnable() {
+                public void run() {
+                    String res;
+                    try {
+                        res = interp.eval(new Thing(cmd)).toString();
+                    } catch(Exception e) {
+                        res = e.toString();
+                    }
+                    me.setString(res);//result
+                }
+            });
         }
         if(c==x && d==i) set(me);
         if(c==e && d==me) set(i);
@@ -52,27 +64,20 @@ public class Console extends TextBox implements CommandListener {
         (new Thread(r)).start();
     }
 
+    //evaluates input and 'after' scripts, sleeping in between
     Runnable r = new Runnable() {
         public void run() {
             while(true) {
-                if(lock) {
-                    lock = false;
-                    String cmd = i.getString();
-                    i.setString("");
-                    try {
-                        cmd = interp.eval(new Thing(cmd)).toString();
-                    } catch(Exception e) {
-                        cmd = e.toString();
-                    }
-                    me.setString(cmd);//result
+                try {
+                    interp.eventLoop().run();
+                } catch(Exception e) {
+                    me.setString(e.toString());//error from 'after' script
                 }
-                Thread.yield();
             }
         }
     };
     Console me;
     
-    boolean lock = false;
     public Interp interp;
 
     public void set(Displayable d) {
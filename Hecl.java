@@ -0,0 +1,76 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.util.Vector;
+import org.hecl.HeclException;
+import org.hecl.Interp;
+import org.hecl.ListThing;
+import org.hecl.Thing;
+import org.hecl.WriterSink;
+
+/**
+ * <code>Hecl</code> runs a script without a MIDP display, on a plain
+ * JVM:
+ *
+ * <pre>
+ * java Hecl ?file? ?arg ...?
+ * </pre>
+ *
+ * The script is read from <code>file</code>, or from standard input
+ * if there is none or it is '-', and the other arguments are in the
+ * global list <code>argv</code>.  'puts' writes to standard output,
+ * in batches.  An error is printed to standard error, and the exit
+ * status is 1.
+ *
+ * @version 1.0
+ */
+public class Hecl {
+    public static void main(String[] args) throws Exception {
+        WriterSink sink = new WriterSink(new OutputStreamWriter(System.out),
+                                         8192, 50);
+        int status = 0;
+        try {
+            InputStream in = args.length > 0 && !args[0].equals("-")
+                ? new FileInputStream(args[0]) : System.in;
+            String script = read(new InputStreamReader(in));
+            Interp interp = new Interp(sink);
+            Vector argv = new Vector();
+            for(int i=1;i<args.length;i++)
+                argv.addElement(new Thing(args[i]));
+            interp.setVar("argv", ListThing.create(argv));
+            interp.eval(new Thing(script));
+        } catch(HeclException e) {
+            sink.flush();
+            System.err.println(e.toString());
+            status = 1;
+        } finally {
+            sink.close();
+        }
+        System.exit(status);
+    }
+
+    static String read(Reader r) throws Exception {
+        StringBuffer sb = new StringBuffer();
+        char[] buf = new char[8192];
+        int n;
+        while((n = r.read(buf)) != -1)
+            sb.append(buf, 0, n);
+        r.close();
+        return sb.toString();
+    }
+}
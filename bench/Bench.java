@@ -0,0 +1,217 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+import mith.Mith;
+import org.hecl.Interp;
+import org.hecl.Parse;
+import org.hecl.Thing;
+
+/**
+ * <code>Bench</code> times the interpreter on a desktop JVM: parsing,
+ * evaluation of loops, recursion and string building, sorting, list
+ * and hash commands, variadic math, and the <code>Mith</code>
+ * functions.  It runs against an <code>Interp</code> made without a
+ * <code>Display</code>, and needs nothing but the Hecl sources and
+ * the MIDP classes they refer to.
+ *
+ * <p>Each benchmark is warmed up, then run for a number of timed
+ * rounds of about a second each, and its mean time per operation is
+ * printed with the spread across rounds:
+ *
+ * <pre>
+ * java -cp classes Bench [rounds] [name ...]
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class Bench {
+
+    /* A benchmark: setup is run once, op once per operation. */
+    static abstract class Case {
+	String name;
+	Interp interp;
+
+	Case(String name) {
+	    this.name = name;
+	}
+
+	void setup() throws Exception {
+	}
+
+	abstract Object op() throws Exception;
+    }
+
+    /* A Case that evaluates a script, after a setup script. */
+    static class Script extends Case {
+	String setup;
+	String script;
+
+	Script(String name, String setup, String script) {
+	    super(name);
+	    this.setup = setup;
+	    this.script = script;
+	}
+
+	void setup() throws Exception {
+	    if (setup != null) {
+		interp.eval(new Thing(setup));
+	    }
+	}
+
+	Object op() throws Exception {
+	    return interp.eval(new Thing(script));
+	}
+    }
+
+    /* A large script: many procs with loops, conditions and nested
+     * commands. */
+    static String bigScript(int nprocs) {
+	StringBuffer sb = new StringBuffer();
+	for (int i = 0; i < nprocs; i++) {
+	    sb.append("proc p").append(i).append(" {a b} {\n");
+	    sb.append("    set r {}\n");
+	    sb.append("    for {set i 0} {< $i $a} {incr $i} {\n");
+	    sb.append("        if {= [% $i 2] 0} {\n");
+	    sb.append("            lappend $r [+ $i $b \"x$i\"]\n");
+	    sb.append("        } else {\n");
+	    sb.append("            lappend $r [strlen \"$a $b\"]\n");
+	    sb.append("        }\n");
+	    sb.append("    }\n");
+	    sb.append("    return $r\n");
+	    sb.append("}\n");
+	}
+	return sb.toString();
+    }
+
+    static Case[] cases() {
+	return new Case[] {
+	    new Case("parse") {
+		String src = bigScript(200);
+		Object op() throws Exception {
+		    return new Parse(interp, src).parseToCode();
+		}
+	    },
+	    new Script("loop", null,
+		       "set s 0; for {set i 0} {< $i 10000} {incr $i} { set s [+ $s $i] }; set s"),
+	    new Script("recursion",
+		       "proc fib {n} { if {< $n 2} { return $n }; + [fib [- $n 1]] [fib [- $n 2]] }",
+		       "fib 15"),
+	    new Script("strbuild", null,
+		       "set s {}; for {set i 0} {< $i 2000} {incr $i} { append $s \"x$i\" }; strlen $s"),
+	    /* sort works in place, so sort a copy: sorting $l itself
+	     * would time sorting a sorted list after the first op. */
+	    new Script("sort",
+		       "set l {}; for {set i 0} {< $i 2000} {incr $i} { lappend $l [% [* $i 7919] 2003] }",
+		       "sort [copy $l]"),
+	    new Script("list",
+		       "set l {}; for {set i 0} {< $i 1000} {incr $i} { lappend $l [copy $i] }",
+		       "set t 0; foreach x $l { set t [+ $t [lindex $l $x]] }; lset $l 0 0; llen $l"),
+	    new Script("hash", null,
+		       "set h [hash {}]; for {set i 0} {< $i 1000} {incr $i} { hset $h k$i [copy $i] }; set t 0; foreach k [hkeys $h] { set t [+ $t [hget $h $k]] }; set t"),
+	    new Script("math", null,
+		       "set t 0; for {set i 0} {< $i 1000} {incr $i} { set t [+ $t [* $i 2 3] [- 100 $i 1] [/ 1000.0 3 2]] }; set t"),
+	    new Case("mith") {
+		Object op() {
+		    double t = 0;
+		    for (int i = 1; i < 1000; i++) {
+			double x = i / 1000.0;
+			t += Mith.pow(x, 1.5) + Mith.exp(x) + Mith.log(x)
+			    + Mith.atan2(x, 1 - x) + Mith.asin(x / 2)
+			    + Mith.acos(x / 2);
+		    }
+		    return new Double(t);
+		}
+	    },
+	};
+    }
+
+    public static void main(String[] args) throws Exception {
+	int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+	Case[] cases = cases();
+	System.out.println("benchmark" + spaces(3) + right("ns/op", 14)
+			   + right("+-", 11));
+	for (int i = 0; i < cases.length; i++) {
+	    Case c = cases[i];
+	    if (args.length > 1 && !chosen(c.name, args)) {
+		continue;
+	    }
+	    c.interp = new Interp();
+	    c.setup();
+	    run(c, 1000000000L);
+	    double[] t = new double[rounds];
+	    for (int r = 0; r < rounds; r++) {
+		t[r] = run(c, 1000000000L);
+	    }
+	    report(c.name, t);
+	}
+    }
+
+    static boolean chosen(String name, String[] args) {
+	for (int i = 1; i < args.length; i++) {
+	    if (args[i].equals(name)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /* Runs c for about ns nanoseconds, and returns the time per op. */
+    static double run(Case c, long ns) throws Exception {
+	long ops = 0;
+	Object sink = null;
+	long start = System.nanoTime();
+	long now;
+	do {
+	    for (int i = 0; i < 10; i++) {
+		sink = c.op();
+	    }
+	    ops += 10;
+	    now = System.nanoTime();
+	} while (now - start < ns);
+	if (sink == null) {
+	    throw new RuntimeException(c.name + " returned nothing");
+	}
+	return (double)(now - start) / ops;
+    }
+
+    static void report(String name, double[] t) {
+	double mean = 0;
+	for (int i = 0; i < t.length; i++) {
+	    mean += t[i];
+	}
+	mean /= t.length;
+	double var = 0;
+	for (int i = 0; i < t.length; i++) {
+	    var += (t[i] - mean) * (t[i] - mean);
+	}
+	double sd = t.length > 1 ? Math.sqrt(var / (t.length - 1)) : 0;
+	System.out.println(name + spaces(12 - name.length())
+			   + right(fmt(mean), 14) + right(fmt(sd), 11));
+    }
+
+    static String fmt(double d) {
+	return Long.toString(Math.round(d));
+    }
+
+    static String right(String s, int width) {
+	return spaces(width - s.length()) + s;
+    }
+
+    static String spaces(int n) {
+	StringBuffer sb = new StringBuffer();
+	for (int i = 0; i < n; i++) {
+	    sb.append(' ');
+	}
+	return sb.toString();
+    }
+}
@@ -0,0 +1,163 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+/**
+ * <code>ArrayVector</code> is a <code>Vector</code> whose common
+ * methods don't lock it.  The interpreter's own lists and code are
+ * only used by one thread at a time, or are not changed once they
+ * are shared, so the locking <code>Vector</code> does on every
+ * access is wasted on them.  Being a <code>Vector</code>, it can
+ * still be handed out where one is expected, as
+ * <code>ListThing.get</code> does.
+ *
+ * <p>Only the methods overridden here skip the lock; the rest are
+ * <code>Vector</code>'s own, and work on the same fields.
+ *
+ * @version 1.0
+ */
+public class ArrayVector extends Vector {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new, empty <code>ArrayVector</code> instance.
+     */
+    public ArrayVector() {
+	super(0);
+    }
+
+    /**
+     * Creates a new, empty <code>ArrayVector</code> instance with room
+     * for <code>capacity</code> elements.
+     *
+     * @param capacity an <code>int</code> value
+     */
+    public ArrayVector(int capacity) {
+	super(capacity);
+    }
+
+    public int size() {
+	return elementCount;
+    }
+
+    public boolean isEmpty() {
+	return elementCount == 0;
+    }
+
+    public Object elementAt(int index) {
+	if (index >= elementCount) {
+	    throw new ArrayIndexOutOfBoundsException(index + " >= "
+						     + elementCount);
+	}
+	return elementData[index];
+    }
+
+    public Object firstElement() {
+	if (elementCount == 0) {
+	    throw new NoSuchElementException();
+	}
+	return elementData[0];
+    }
+
+    public Object lastElement() {
+	if (elementCount == 0) {
+	    throw new NoSuchElementException();
+	}
+	return elementData[elementCount - 1];
+    }
+
+    public void setElementAt(Object obj, int index) {
+	if (index >= elementCount) {
+	    throw new ArrayIndexOutOfBoundsException(index + " >= "
+						     + elementCount);
+	}
+	elementData[index] = obj;
+    }
+
+    public void removeElementAt(int index) {
+	if (index >= elementCount) {
+	    throw new ArrayIndexOutOfBoundsException(index + " >= "
+						     + elementCount);
+	}
+	int n = elementCount - index - 1;
+	if (n > 0) {
+	    System.arraycopy(elementData, index + 1, elementData, index, n);
+	}
+	elementData[--elementCount] = null;
+    }
+
+    public void insertElementAt(Object obj, int index) {
+	if (index > elementCount) {
+	    throw new ArrayIndexOutOfBoundsException(index + " > "
+						     + elementCount);
+	}
+	room();
+	System.arraycopy(elementData, index, elementData, index + 1,
+			 elementCount - index);
+	elementData[index] = obj;
+	elementCount++;
+    }
+
+    public void addElement(Object obj) {
+	room();
+	elementData[elementCount++] = obj;
+    }
+
+    public void removeAllElements() {
+	for (int i = 0; i < elementCount; i++) {
+	    elementData[i] = null;
+	}
+	elementCount = 0;
+    }
+
+    public int indexOf(Object elem, int index) {
+	for (int i = index; i < elementCount; i++) {
+	    if (elem == null ? elementData[i] == null
+		: elem.equals(elementData[i])) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    public Enumeration elements() {
+	return new Enumeration() {
+	    int i = 0;
+
+	    public boolean hasMoreElements() {
+		return i < elementCount;
+	    }
+
+	    public Object nextElement() {
+		if (i >= elementCount) {
+		    throw new NoSuchElementException();
+		}
+		return elementData[i++];
+	    }
+	};
+    }
+
+    /* Makes room for one more element. */
+    private void room() {
+	if (elementCount == elementData.length) {
+	    Object[] data = new Object[elementCount < 4 ? 8 : elementCount * 2];
+	    System.arraycopy(elementData, 0, data, 0, elementCount);
+	    elementData = data;
+	}
+    }
+}
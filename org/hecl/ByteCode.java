@@ -0,0 +1,849 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Vector;
+
+/**
+ * <code>ByteCode</code> is a <code>CodeThing</code> compiled into a
+ * flat array of instructions for a small stack machine.  Each stanza
+ * becomes a sequence that pushes argv[0], the command it resolves
+ * to, and the substituted arguments, followed by a CALL.  The
+ * bodies of <code>if</code>, <code>while</code> and <code>for</code>
+ * are compiled inline, behind a guard that falls back to an
+ * ordinary call if the command has been redefined since.
+ *
+ * Code compiled <code>HOT</code> (the body of a proc that is called
+ * often) also calls the simple math commands directly, behind the
+ * same kind of guard, rather than through <code>cmdCode</code>.
+ *
+ * <code>break</code> and <code>continue</code> in the body of an
+ * inlined loop, and <code>return</code> in the body of a proc, are
+ * compiled to jumps rather than thrown, again behind a guard.  A
+ * call to another proc as the last thing a proc body does, either
+ * on its own or as <code>return [proc ...]</code>, is handed back
+ * to <code>Proc</code> to make, rather than being made from inside
+ * the body.
+ *
+ * Errors are reported exactly as <code>Stanza.run</code> would
+ * report them: a table of regions records which instructions
+ * belong to argument substitution (the line number is set), to an
+ * inlined command (the command is added to the exception stack), or
+ * to a loop body (break and continue are caught).
+ *
+ * @version 1.0
+ */
+class ByteCode {
+    /* Push consts[a]. */
+    static final int LIT = 0;
+    /* Push the value of the variable consts[a]. */
+    static final int VAR = 1;
+    /* Push the substituted group consts[a]. */
+    static final int GROUP = 2;
+    /* Push consts[a], evaluated if it is a [command]. */
+    static final int CODE = 3;
+    /* Push an empty result. */
+    static final int EMPTY = 4;
+    /* Push what stanzas[a] resolves to, given the argv[0] on top. */
+    static final int RESOLVE = 5;
+    /* Call stanzas[a] with b arguments, replacing them with the result. */
+    static final int CALL = 6;
+    static final int POP = 7;
+    static final int JUMP = 8;
+    /* Pop, and jump to a if it is false. */
+    static final int JUMPF = 9;
+    /* Jump to c unless stanzas[a] still resolves to consts[b]. */
+    static final int GUARD = 10;
+    /* Return the top of the stack. */
+    static final int END = 11;
+    /* Run the MathCmds consts[a] on the top b-1 values. */
+    static final int MATH = 12;
+    /* Push the result of running stanzas[a], which has nothing to
+     * substitute. */
+    static final int RUN = 15;
+    /* Like CALL, but if the command is a proc, return Proc.TAILCALL
+     * to have Proc call it instead.  If c isn't -1, it is the line
+     * of the return this call is the argument of. */
+    static final int TAILCALL = 16;
+
+    /* Compilation flags.  PROC code is only ever run as the body of
+     * a Proc, so it can return from it directly, and HOT code calls
+     * math commands directly. */
+    static final int PROC = 1;
+    static final int HOT = 2;
+    /* Drop the stack to depth b and jump to a. */
+    static final int UNWIND = 13;
+    /* Return the top of the stack from the proc. */
+    static final int RET = 14;
+
+    /* Region kinds. */
+    private static final int LINE = 0;
+    private static final int WHERE = 1;
+    private static final int LOOP = 2;
+
+    /* Entries in the region table: start, end, kind, and three
+     * arguments. */
+    private static final int REGIONSIZE = 6;
+
+    /* The code this was compiled from. */
+    CodeThing codething;
+
+    private int[] code;
+    private Object[] consts;
+    private Stanza[] stanzas;
+    private int maxstack;
+
+    /* Regions are stored in the order they were closed, so the
+     * innermost region around an instruction is always found first. */
+    private int[] regions;
+
+    /* Compilation state. */
+    private Interp interp;
+    private boolean proc;
+    private boolean hot;
+    /* Set while compiling the last stanza of a proc body. */
+    private boolean tail = false;
+    private int pc = 0;
+    private int depth = 0;
+    private Vector constv = new Vector();
+    private Vector stanzav = new Vector();
+    private Vector regionv = new Vector();
+
+    /* While compiling the body of an inlined loop, the places to
+     * patch with its break and continue targets, and the stack depth
+     * in the loop. */
+    private Vector breaks = null;
+    private Vector continues = null;
+    private int loopdepth = 0;
+
+    private ByteCode(Interp interp, int flags) {
+	this.interp = interp;
+	this.proc = (flags & PROC) != 0;
+	this.hot = (flags & HOT) != 0;
+	code = new int[64];
+    }
+
+    /**
+     * <code>compile</code> turns <code>codething</code> into
+     * <code>ByteCode</code>, or returns <code>null</code> if it
+     * can't be compiled.
+     *
+     * @param interp an <code>Interp</code> value
+     * @param codething a <code>CodeThing</code> value
+     * @param flags PROC and/or HOT, or 0.
+     * @return a <code>ByteCode</code> value
+     */
+    static ByteCode compile(Interp interp, CodeThing codething,
+			    int flags) {
+	ByteCode bc = new ByteCode(interp, flags);
+	if (!bc.block(codething, bc.proc)) {
+	    return null;
+	}
+	bc.emit(END);
+	bc.codething = codething;
+
+	int[] newcode = new int[bc.pc];
+	System.arraycopy(bc.code, 0, newcode, 0, bc.pc);
+	bc.code = newcode;
+	bc.consts = new Object[bc.constv.size()];
+	bc.constv.copyInto(bc.consts);
+	bc.stanzas = new Stanza[bc.stanzav.size()];
+	bc.stanzav.copyInto(bc.stanzas);
+	bc.regions = new int[bc.regionv.size()];
+	for (int i = 0; i < bc.regions.length; i++) {
+	    bc.regions[i] = ((Integer)bc.regionv.elementAt(i)).intValue();
+	}
+	bc.interp = null;
+	bc.constv = null;
+	bc.stanzav = null;
+	bc.regionv = null;
+	return bc;
+    }
+
+    /**
+     * The <code>run</code> method runs the compiled code.
+     *
+     * @param interp an <code>Interp</code> value
+     * @return a <code>Thing</code> value
+     * @exception HeclException if an error occurs
+     */
+    Thing run(Interp interp) throws HeclException {
+	final int[] code = this.code;
+	final Object[] consts = this.consts;
+	Object[] stack = new Object[maxstack];
+	int sp = 0;
+	int pc = 0;
+	int at = 0;
+	Thing t;
+
+	while (true) {
+	    try {
+		while (true) {
+		    at = pc;
+		    switch (code[pc]) {
+		      case LIT:
+			stack[sp++] = consts[code[pc + 1]];
+			pc += 2;
+			break;
+		      case VAR:
+			stack[sp++] = CodeThing.doSubstSubst(
+			    interp, (Thing)consts[code[pc + 1]]);
+			pc += 2;
+			break;
+		      case GROUP:
+			t = CodeThing.doGroupSubst(
+			    interp, (Thing)consts[code[pc + 1]]);
+			t.copy = true;
+			stack[sp++] = t;
+			pc += 2;
+			break;
+		      case CODE:
+			stack[sp++] = CodeThing.doCodeSubst(
+			    interp, (Thing)consts[code[pc + 1]]);
+			pc += 2;
+			break;
+		      case EMPTY:
+			stack[sp++] = Thing.emptyThing();
+			pc++;
+			break;
+		      case RESOLVE:
+			stack[sp] = stanzas[code[pc + 1]].resolve(
+			    interp, (Thing)stack[sp - 1]);
+			sp++;
+			pc += 2;
+			break;
+		      case CALL: {
+			  int argc = code[pc + 2];
+			  int base = sp - argc - 1;
+			  stack[base] = call(interp, stanzas[code[pc + 1]],
+					     stack, base, argc);
+			  while (sp > base + 1) {
+			      stack[--sp] = null;
+			  }
+			  pc += 3;
+			  break;
+		      }
+		      case TAILCALL: {
+			  int argc = code[pc + 2];
+			  int base = sp - argc - 1;
+			  Object cmd = stack[base + 1];
+			  if (cmd instanceof Proc) {
+			      Thing[] argv = new Thing[argc];
+			      argv[0] = (Thing)stack[base];
+			      for (int i = 1; i < argc; i++) {
+				  argv[i] = (Thing)stack[base + 1 + i];
+			      }
+			      interp.tailproc = (Proc)cmd;
+			      interp.tailargv = argv;
+			      interp.tailline = stanzas[code[pc + 1]].getLineno();
+			      interp.tailreturnline = code[pc + 3];
+			      return Proc.TAILCALL;
+			  }
+			  stack[base] = call(interp, stanzas[code[pc + 1]],
+					     stack, base, argc);
+			  while (sp > base + 1) {
+			      stack[--sp] = null;
+			  }
+			  pc += 4;
+			  break;
+		      }
+		      case RUN:
+			stack[sp++] = stanzas[code[pc + 1]].run(interp);
+			pc += 2;
+			break;
+		      case POP:
+			stack[--sp] = null;
+			pc++;
+			break;
+		      case JUMP:
+			pc = code[pc + 1];
+			break;
+		      case JUMPF:
+			t = (Thing)stack[--sp];
+			stack[sp] = null;
+			pc = Thing.isTrue(t) ? pc + 2 : code[pc + 1];
+			break;
+		      case GUARD:
+			if (stanzas[code[pc + 1]].lookup(interp)
+			    == consts[code[pc + 2]]) {
+			    pc += 4;
+			} else {
+			    pc = code[pc + 3];
+			}
+			break;
+		      case MATH: {
+			  int argc = code[pc + 2];
+			  sp -= argc - 1;
+			  t = ((MathCmds)consts[code[pc + 1]]).direct(
+			      interp, (Thing)stack[sp],
+			      argc > 2 ? (Thing)stack[sp + 1] : null);
+			  stack[sp + 1] = null;
+			  stack[sp++] = t;
+			  pc += 3;
+			  break;
+		      }
+		      case UNWIND:
+			while (sp > code[pc + 2]) {
+			    stack[--sp] = null;
+			}
+			pc = code[pc + 1];
+			break;
+		      case RET:
+		      case END:
+			return (Thing)stack[sp - 1];
+		    }
+		}
+	    } catch (Exception e) {
+		HeclException he = null;
+		if (e instanceof HeclException) {
+		    he = (HeclException)e;
+		}
+		boolean resume = false;
+		for (int r = 0; r < regions.length && !resume; r += REGIONSIZE) {
+		    if (at < regions[r] || at >= regions[r + 1]) {
+			continue;
+		    }
+		    switch (regions[r + 2]) {
+		      case LINE:
+			if (he != null) {
+			    he.setLine(regions[r + 3]);
+			}
+			break;
+		      case WHERE: {
+			  Stanza s = stanzas[regions[r + 3]];
+			  if (he != null) {
+			      he.where(s.getCmdName(), s.getLineno());
+			  } else {
+			      he = Stanza.javaException(e, s.getLineno());
+			  }
+			  break;
+		      }
+		      case LOOP:
+			if (he == null) {
+			    break;
+			}
+			if (he.signal == HeclException.BREAKSIGNAL) {
+			    pc = regions[r + 3];
+			} else if (he.signal == HeclException.CONTINUESIGNAL) {
+			    pc = regions[r + 4];
+			} else {
+			    break;
+			}
+			while (sp > regions[r + 5]) {
+			    stack[--sp] = null;
+			}
+			resume = true;
+			break;
+		    }
+		}
+		if (!resume) {
+		    if (he != null) {
+			throw he;
+		    }
+		    throw (RuntimeException)e;
+		}
+	    }
+	}
+    }
+
+    /* Calls the command below the arguments on the stack. */
+    private static Thing call(Interp interp, Stanza s, Object[] stack,
+			      int base, int argc) throws HeclException {
+	Thing[] argv = interp.takeArgv(argc);
+	argv[0] = (Thing)stack[base];
+	for (int i = 1; i < argc; i++) {
+	    argv[i] = (Thing)stack[base + 1 + i];
+	}
+	try {
+	    return s.invoke(interp, stack[base + 1], argv);
+	} finally {
+	    interp.releaseArgv(argv);
+	}
+    }
+
+    private void emit(int op) {
+	if (pc == code.length) {
+	    int[] newcode = new int[code.length * 2];
+	    System.arraycopy(code, 0, newcode, 0, pc);
+	    code = newcode;
+	}
+	code[pc++] = op;
+    }
+
+    private void push() {
+	if (++depth > maxstack) {
+	    maxstack = depth;
+	}
+    }
+
+    private int constant(Object o) {
+	constv.addElement(o);
+	return constv.size() - 1;
+    }
+
+    private int stanza(Stanza s) {
+	int i = stanzav.indexOf(s);
+	if (i < 0) {
+	    stanzav.addElement(s);
+	    i = stanzav.size() - 1;
+	}
+	return i;
+    }
+
+    private void region(int start, int end, int kind, int a, int b, int c) {
+	regionv.addElement(new Integer(start));
+	regionv.addElement(new Integer(end));
+	regionv.addElement(new Integer(kind));
+	regionv.addElement(new Integer(a));
+	regionv.addElement(new Integer(b));
+	regionv.addElement(new Integer(c));
+    }
+
+    /* Emits a jump whose target is patched in later, returning the
+     * position of the target. */
+    private int jump(int op) {
+	emit(op);
+	return target();
+    }
+
+    private int target() {
+	emit(-1);
+	return pc - 1;
+    }
+
+    /**
+     * <code>block</code> compiles the stanzas of
+     * <code>codething</code>, leaving the result of the last one (or
+     * an empty result) on the stack.
+     *
+     * @param codething a <code>CodeThing</code> value
+     * @param body a <code>boolean</code> value - true if this is the
+     * body of a proc.
+     * @return a <code>boolean</code> value - false if the code can't
+     * be compiled.
+     */
+    private boolean block(CodeThing codething, boolean body) {
+	Vector v = codething.getStanzas();
+	int sz = v.size();
+	if (sz == 0) {
+	    emit(EMPTY);
+	    push();
+	    return true;
+	}
+	for (int i = 0; i < sz; i++) {
+	    if (i > 0) {
+		emit(POP);
+		depth--;
+	    }
+	    tail = body && i == sz - 1;
+	    if (!stanza((Stanza)v.elementAt(i), true)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private boolean stanza(Stanza s, boolean special) {
+	/* Only this stanza is in tail position, not any inside it. */
+	boolean tail = this.tail;
+	this.tail = false;
+	Thing[] argv = s.getArgv();
+	if (argv.length == 0) {
+	    return false;
+	}
+	if (s.isFolded()) {
+	    emit(RUN);
+	    emit(stanza(s));
+	    push();
+	    return true;
+	}
+	if (special && s.getCmdName() != null) {
+	    Command cmd = s.lookup(interp);
+	    if (hot && cmd instanceof MathCmds
+		&& ((MathCmds)cmd).isDirect(argv.length)) {
+		direct(s, (MathCmds)cmd);
+		return true;
+	    }
+	    if (cmd instanceof ControlCmds && breaks != null
+		&& argv.length == 1) {
+		int cmdcode = ((ControlCmds)cmd).cmdcode;
+		if (cmdcode == ControlCmds.BREAK) {
+		    unwind(s, cmd, breaks);
+		    return true;
+		} else if (cmdcode == ControlCmds.CONTINUE) {
+		    unwind(s, cmd, continues);
+		    return true;
+		}
+	    }
+	    if (proc && cmd instanceof InterpCmds
+		&& ((InterpCmds)cmd).cmdcode == InterpCmds.RETURN
+		&& argv.length <= 2) {
+		ret(s, cmd, tail);
+		return true;
+	    }
+	    if (cmd instanceof ControlCmds) {
+		int start = pc;
+		int d = depth;
+		int nregions = regionv.size();
+		if (inlined(s, (ControlCmds)cmd)) {
+		    return true;
+		}
+		/* Give up on inlining this one. */
+		pc = start;
+		depth = d;
+		regionv.setSize(nregions);
+	    }
+	}
+
+	if (s.isLiteral() && !tail) {
+	    emit(RUN);
+	    emit(stanza(s));
+	    push();
+	    return true;
+	}
+	call(s, tail, -1);
+	return true;
+    }
+
+    /**
+     * <code>call</code> compiles an ordinary call of the command
+     * named by <code>s</code>, as a tail call if <code>tail</code>
+     * is set.
+     */
+    private void call(Stanza s, boolean tail, int returnline) {
+	Thing[] argv = s.getArgv();
+	int d = depth;
+	arg(argv[0]);
+	emit(RESOLVE);
+	emit(stanza(s));
+	push();
+	int start = pc;
+	for (int i = 1; i < argv.length; i++) {
+	    arg(argv[i]);
+	}
+	if (pc > start) {
+	    region(start, pc, LINE, s.getLineno(), 0, 0);
+	}
+	emit(tail ? TAILCALL : CALL);
+	emit(stanza(s));
+	emit(argv.length);
+	if (tail) {
+	    emit(returnline);
+	}
+	depth = d + 1;
+    }
+
+    private void arg(Thing thing) {
+	RealThing rt = thing.getVal();
+	if (rt instanceof GroupThing) {
+	    emit(GROUP);
+	} else if (rt instanceof SubstThing) {
+	    emit(VAR);
+	} else if (rt instanceof CodeThing) {
+	    emit(CODE);
+	} else {
+	    emit(LIT);
+	}
+	emit(constant(thing));
+	push();
+    }
+
+    /**
+     * <code>body</code> returns the code of a literal block argument,
+     * or <code>null</code> if it isn't one.  The argument itself is
+     * left alone, so the generic path sees it just as it was.
+     */
+    private CodeThing body(Thing thing) {
+	RealThing rt = thing.getVal();
+	try {
+	    if (rt instanceof CodeThing) {
+		return ((CodeThing)rt).marksubst ? null : (CodeThing)rt;
+	    } else if (rt instanceof StringThing) {
+		return CodeThing.get(interp, new Thing(thing.toString()));
+	    }
+	} catch (HeclException e) {
+	}
+	return null;
+    }
+
+    /**
+     * <code>inlined</code> compiles a stanza calling one of the
+     * control commands, guarded so that the stanza is called as usual
+     * should the command change.
+     *
+     * @return a <code>boolean</code> value - false if the command
+     * can't be inlined, in which case nothing useful was emitted.
+     */
+    private boolean inlined(Stanza s, ControlCmds cmd) {
+	Thing[] argv = s.getArgv();
+	int argc = argv.length;
+	CodeThing[] blocks = new CodeThing[argc];
+
+	switch (cmd.cmdcode) {
+	  case ControlCmds.IF:
+	    if (argc < 3) {
+		return false;
+	    }
+	    for (int i = 3; i < argc; i += 3) {
+		if (!(argv[i].getVal() instanceof StringThing)) {
+		    return false;
+		}
+		String word = argv[i].toString();
+		if (word.equals("else") && argc == i + 2) {
+		    break;
+		} else if (!word.equals("elseif") || i + 3 > argc) {
+		    return false;
+		}
+	    }
+	    break;
+	  case ControlCmds.FOR:
+	    if (argc != 5) {
+		return false;
+	    }
+	    break;
+	  case ControlCmds.WHILE:
+	    if (argc != 3) {
+		return false;
+	    }
+	    break;
+	  default:
+	    return false;
+	}
+	for (int i = 1; i < argc; i++) {
+	    if (cmd.cmdcode == ControlCmds.IF && i % 3 == 0) {
+		continue;
+	    }
+	    if ((blocks[i] = body(argv[i])) == null) {
+		return false;
+	    }
+	}
+
+	int si = stanza(s);
+	emit(GUARD);
+	emit(si);
+	emit(constant(cmd));
+	int generic = target();
+
+	int d = depth;
+	int start = pc;
+	if (!control(cmd.cmdcode, blocks, d)) {
+	    return false;
+	}
+	region(start, pc, WHERE, si, 0, 0);
+	int done = jump(JUMP);
+
+	code[generic] = pc;
+	depth = d;
+	stanza(s, false);
+	code[done] = pc;
+	return true;
+    }
+
+    /**
+     * <code>direct</code> compiles a stanza calling a math command
+     * that can be run with <code>MathCmds.direct</code>.
+     */
+    private void direct(Stanza s, MathCmds cmd) {
+	Thing[] argv = s.getArgv();
+	int si = stanza(s);
+	emit(GUARD);
+	emit(si);
+	emit(constant(cmd));
+	int generic = target();
+
+	int d = depth;
+	int start = pc;
+	for (int i = 1; i < argv.length; i++) {
+	    arg(argv[i]);
+	}
+	region(start, pc, LINE, s.getLineno(), 0, 0);
+	start = pc;
+	emit(MATH);
+	emit(constant(cmd));
+	emit(argv.length);
+	region(start, pc, WHERE, si, 0, 0);
+	int done = jump(JUMP);
+
+	code[generic] = pc;
+	depth = d;
+	stanza(s, false);
+	code[done] = pc;
+    }
+
+    /**
+     * <code>unwind</code> compiles a break or continue inside an
+     * inlined loop to a jump, to be patched in from
+     * <code>targets</code> once the loop is done.
+     */
+    private void unwind(Stanza s, Command cmd, Vector targets) {
+	emit(GUARD);
+	emit(stanza(s));
+	emit(constant(cmd));
+	int generic = target();
+	emit(UNWIND);
+	targets.addElement(new Integer(target()));
+	emit(loopdepth);
+	code[generic] = pc;
+	stanza(s, false);
+    }
+
+    /**
+     * <code>ret</code> compiles a return in the body of a proc to
+     * return from <code>run</code> directly.  If it is the last
+     * stanza and returns the result of a single command, that command
+     * is compiled in place as a tail call.
+     */
+    private void ret(Stanza s, Command cmd, boolean tail) {
+	Thing[] argv = s.getArgv();
+	emit(GUARD);
+	emit(stanza(s));
+	emit(constant(cmd));
+	int generic = target();
+	int d = depth;
+	Stanza inner = null;
+	if (tail && argv.length == 2
+	    && argv[1].getVal() instanceof CodeThing) {
+	    CodeThing c = (CodeThing)argv[1].getVal();
+	    if (c.marksubst && c.getStanzas().size() == 1) {
+		inner = (Stanza)c.getStanzas().elementAt(0);
+		if (inner.getArgv().length == 0 || inner.isFolded()) {
+		    inner = null;
+		}
+	    }
+	}
+	if (inner != null) {
+	    int start = pc;
+	    call(inner, true, s.getLineno());
+	    region(start, pc, LINE, s.getLineno(), 0, 0);
+	} else if (argv.length > 1) {
+	    int start = pc;
+	    arg(argv[1]);
+	    region(start, pc, LINE, s.getLineno(), 0, 0);
+	} else {
+	    emit(EMPTY);
+	    push();
+	}
+	emit(RET);
+	code[generic] = pc;
+	depth = d;
+	stanza(s, false);
+    }
+
+    private void patch(Vector targets, int target) {
+	for (int i = 0; i < targets.size(); i++) {
+	    code[((Integer)targets.elementAt(i)).intValue()] = target;
+	}
+    }
+
+    private boolean control(int cmdcode, CodeThing[] blocks, int d) {
+	int argc = blocks.length;
+	switch (cmdcode) {
+	  case ControlCmds.IF: {
+	      Vector ends = new Vector();
+	      int i = 1;
+	      while (true) {
+		  if (!block(blocks[i], false)) {
+		      return false;
+		  }
+		  int next = jump(JUMPF);
+		  depth--;
+		  if (!block(blocks[i + 1], false)) {
+		      return false;
+		  }
+		  ends.addElement(new Integer(jump(JUMP)));
+		  depth = d;
+		  code[next] = pc;
+		  i += 3;
+		  if (i >= argc) {
+		      emit(EMPTY);
+		      push();
+		      break;
+		  } else if (i == argc - 1) {
+		      /* else */
+		      if (!block(blocks[i], false)) {
+			  return false;
+		      }
+		      break;
+		  }
+	      }
+	      for (int j = 0; j < ends.size(); j++) {
+		  code[((Integer)ends.elementAt(j)).intValue()] = pc;
+	      }
+	      return true;
+	  }
+	  case ControlCmds.WHILE:
+	    return loop(null, blocks[1], null, blocks[2], d);
+	  case ControlCmds.FOR:
+	    return loop(blocks[1], blocks[2], blocks[3], blocks[4], d);
+	}
+	return false;
+    }
+
+    private boolean loop(CodeThing init, CodeThing cond, CodeThing next,
+			 CodeThing body, int d) {
+	if (init != null) {
+	    if (!block(init, false)) {
+		return false;
+	    }
+	    emit(POP);
+	    depth--;
+	}
+	int top = pc;
+	if (!block(cond, false)) {
+	    return false;
+	}
+	int end = jump(JUMPF);
+	depth--;
+	int start = pc;
+	Vector outerbreaks = breaks;
+	Vector outercontinues = continues;
+	int outerdepth = loopdepth;
+	Vector loopbreaks = new Vector();
+	Vector loopcontinues = new Vector();
+	breaks = loopbreaks;
+	continues = loopcontinues;
+	loopdepth = d;
+	boolean ok = block(body, false);
+	breaks = outerbreaks;
+	continues = outercontinues;
+	loopdepth = outerdepth;
+	if (!ok) {
+	    return false;
+	}
+	int bodyend = pc;
+	emit(POP);
+	depth--;
+	int cont = pc;
+	if (next != null) {
+	    if (!block(next, false)) {
+		return false;
+	    }
+	    emit(POP);
+	    depth--;
+	} else {
+	    cont = top;
+	}
+	emit(JUMP);
+	emit(top);
+	code[end] = pc;
+	patch(loopbreaks, pc);
+	patch(loopcontinues, cont);
+	/* The region is added after those of the body, so that loops
+	 * nested inside it catch their own break and continue. */
+	region(start, bodyend, LOOP, pc, cont, d);
+	emit(EMPTY);
+	push();
+	return true;
+    }
+}
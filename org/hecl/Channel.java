@@ -0,0 +1,112 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+/**
+ * A <code>Channel</code> passes values from one Hecl thread to
+ * another.  It holds at most <code>capacity</code> values: sending
+ * to a full channel waits until there is room, and receiving from an
+ * empty one waits until something is sent, or the channel is closed.
+ *
+ * @version 1.0
+ */
+class Channel {
+    private Thing[] buffer;
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a new <code>Channel</code> instance.
+     *
+     * @param capacity an <code>int</code> value - the most values it
+     * holds before send waits.
+     */
+    Channel(int capacity) {
+	buffer = new Thing[capacity];
+    }
+
+    /**
+     * <code>send</code> adds <code>value</code> to the channel,
+     * waiting for room if it is full.
+     *
+     * @param value a <code>Thing</code> value
+     * @exception HeclException if the channel is closed
+     */
+    synchronized void send(Thing value) throws HeclException {
+	while (count == buffer.length && !closed) {
+	    await();
+	}
+	if (closed) {
+	    throw new HeclException("channel is closed");
+	}
+	buffer[(head + count) % buffer.length] = value;
+	count++;
+	notifyAll();
+    }
+
+    /**
+     * <code>recv</code> takes the oldest value from the channel,
+     * waiting for one if it is empty.
+     *
+     * @return a <code>Thing</code> value
+     * @exception HeclException if the channel is closed and empty
+     */
+    synchronized Thing recv() throws HeclException {
+	while (count == 0 && !closed) {
+	    await();
+	}
+	if (count == 0) {
+	    throw new HeclException("channel is closed");
+	}
+	Thing value = buffer[head];
+	buffer[head] = null;
+	head = (head + 1) % buffer.length;
+	count--;
+	notifyAll();
+	return value;
+    }
+
+    /**
+     * <code>close</code> closes the channel.  Values already in it
+     * can still be received; after that, recv fails, as does send
+     * straight away.
+     */
+    synchronized void close() {
+	closed = true;
+	notifyAll();
+    }
+
+    /**
+     * <code>size</code> returns the number of values waiting in the
+     * channel.
+     *
+     * @return an <code>int</code> value
+     */
+    synchronized int size() {
+	return count;
+    }
+
+    private void await() throws HeclException {
+	try {
+	    wait();
+	} catch (InterruptedException e) {
+	    throw new HeclException("interrupted");
+	}
+    }
+
+    public String toString() {
+	return "chan" + Integer.toHexString(hashCode());
+    }
+}
@@ -0,0 +1,157 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * <code>CodeCache</code> remembers the <code>CodeThing</code>s that
+ * source strings were parsed into, so that code built up as a string
+ * and evaluated over and over is only parsed once.  It holds at most
+ * <code>max</code> entries, dropping the least recently used one to
+ * make room for a new one.
+ *
+ * <p>A cached <code>CodeThing</code> is shared by every Thing whose
+ * source is the same.  That is safe because running code never
+ * changes it: its literals are copied when they are bound to a
+ * variable, <code>ListThing.get</code> and <code>HashThing.get</code>
+ * hand out copies of them, and the elements of a literal list are
+ * literals too.
+ *
+ * @version 1.0
+ */
+class CodeCache {
+    /* An entry in the list of entries, most recently used first. */
+    private static final class Entry {
+	String source;
+	CodeThing code;
+	Entry prev;
+	Entry next;
+    }
+
+    private Hashtable entries = new Hashtable();
+    private Entry first = null;
+    private Entry last = null;
+    private int max;
+
+    int hits = 0;
+    int misses = 0;
+
+    /**
+     * Creates a new <code>CodeCache</code> instance.
+     *
+     * @param max an <code>int</code> value - the most entries to keep.
+     */
+    CodeCache(int max) {
+	this.max = max;
+    }
+
+    /**
+     * <code>get</code> returns the code <code>source</code> was
+     * parsed into, or <code>null</code> if it isn't in the cache.
+     *
+     * @param source a <code>String</code> value
+     * @return a <code>CodeThing</code> value
+     */
+    CodeThing get(String source) {
+	Entry e = (Entry)entries.get(source);
+	if (e == null) {
+	    misses++;
+	    return null;
+	}
+	hits++;
+	if (e != first) {
+	    unlink(e);
+	    link(e);
+	}
+	return e.code;
+    }
+
+    /**
+     * <code>put</code> adds the code <code>source</code> was parsed
+     * into to the cache.
+     *
+     * @param source a <code>String</code> value
+     * @param code a <code>CodeThing</code> value
+     */
+    void put(String source, CodeThing code) {
+	if (max <= 0 || entries.containsKey(source)) {
+	    return;
+	}
+	if (entries.size() >= max) {
+	    entries.remove(last.source);
+	    unlink(last);
+	}
+	Entry e = new Entry();
+	e.source = source;
+	e.code = code;
+	entries.put(source, e);
+	link(e);
+    }
+
+    /**
+     * <code>stats</code> returns the counters as a list of names and
+     * values, suitable for <code>hash</code>.
+     *
+     * @return a <code>Thing</code> value
+     */
+    Thing stats() {
+	Vector v = new Vector();
+	v.addElement(new Thing("hits"));
+	v.addElement(IntThing.create(hits));
+	v.addElement(new Thing("misses"));
+	v.addElement(IntThing.create(misses));
+	v.addElement(new Thing("size"));
+	v.addElement(IntThing.create(entries.size()));
+	v.addElement(new Thing("max"));
+	v.addElement(IntThing.create(max));
+	return ListThing.create(v);
+    }
+
+    /**
+     * <code>reset</code> empties the cache and zeroes the counters.
+     */
+    void reset() {
+	entries.clear();
+	first = last = null;
+	hits = misses = 0;
+    }
+
+    private void link(Entry e) {
+	e.prev = null;
+	e.next = first;
+	if (first != null) {
+	    first.prev = e;
+	}
+	first = e;
+	if (last == null) {
+	    last = e;
+	}
+    }
+
+    private void unlink(Entry e) {
+	if (e.prev != null) {
+	    e.prev.next = e.next;
+	} else {
+	    first = e.next;
+	}
+	if (e.next != null) {
+	    e.next.prev = e.prev;
+	} else {
+	    last = e.prev;
+	}
+	e.prev = e.next = null;
+    }
+}
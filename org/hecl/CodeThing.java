@@ -33,8 +33,13 @@ public class CodeThing implements RealThing {
     /* Mark this for substitution or not. */
     public boolean marksubst = false;
 
+    /* The compiled form of this code, made the second time it is
+     * run, and how many times it has been run without one. */
+    private volatile ByteCode bytecode = null;
+    private int runs = 0;
+
     CodeThing() {
-        stanzas = new Vector();
+        stanzas = new ArrayVector();
     }
 
     CodeThing(Vector newstanzas) {
@@ -72,8 +77,16 @@ public class CodeThing implements RealThing {
 	    /* FIXME - addstanza lineno */
 	    newthing.addStanza(interp, argv, -1);
 	} else {
-	    Parse hp = new Parse(interp, thing.toString());
-            newthing = hp.parseToCode();
+	    /* Code built up as a string tends to be run more than
+	     * once, so keep hold of what it parsed to. */
+	    String source = thing.toString();
+	    newthing = interp.codecache.get(source);
+	    if (newthing == null) {
+		Parse hp = new Parse(interp, source);
+		newthing = hp.parseToCode();
+		newthing.fold(interp);
+		interp.codecache.put(source, newthing);
+	    }
         }
 	thing.setVal(newthing);
     }
@@ -103,10 +116,11 @@ public class CodeThing implements RealThing {
      * @exception HeclException if an error occurs
      */
     public RealThing deepcopy() throws HeclException {
-	Vector deststanzas = new Vector();
+	int sz = stanzas.size();
+	Vector deststanzas = new ArrayVector(sz);
 
-	for (Enumeration e = stanzas.elements(); e.hasMoreElements();) {
-            Stanza s = (Stanza)e.nextElement();
+	for (int i = 0; i < sz; i++) {
+            Stanza s = (Stanza)stanzas.elementAt(i);
             deststanzas.addElement(s.deepcopy());
         }
         return new CodeThing(deststanzas);
@@ -164,9 +178,10 @@ public class CodeThing implements RealThing {
         Vector v = GroupThing.get(thing);
 
 	Thing t = null;
+	int sz = v.size();
 
-	for (Enumeration e = v.elements(); e.hasMoreElements();) {
-	    t = (Thing) e.nextElement();
+	for (int i = 0; i < sz; i++) {
+	    t = (Thing) v.elementAt(i);
 
 	    realthing = t.getVal();
 	    if (realthing instanceof GroupThing) {
@@ -192,6 +207,36 @@ public class CodeThing implements RealThing {
      */
     public void addStanza(Interp interp, Thing []argv, int lineno) {
 	stanzas.addElement(new Stanza(null, argv, lineno));
+	bytecode = null;
+	runs = 0;
+    }
+
+    /**
+     * <code>getStanzas</code> returns the stanzas of this code.
+     *
+     * @return a <code>Vector</code> of <code>Stanza</code>s
+     */
+    Vector getStanzas() {
+	return stanzas;
+    }
+
+    /**
+     * <code>fold</code> works out ahead of time the result of those
+     * stanzas which only call pure commands on literals.
+     *
+     * @param interp an <code>Interp</code> value
+     * @return a <code>boolean</code> value - true if the code is a
+     * single stanza, which was folded.
+     */
+    boolean fold(Interp interp) {
+	boolean folded = true;
+	int sz = stanzas.size();
+	for (int i = 0; i < sz; i++) {
+	    if (!((Stanza)stanzas.elementAt(i)).fold(interp)) {
+		folded = false;
+	    }
+	}
+	return folded && sz == 1;
     }
 
     /**
@@ -200,14 +245,28 @@ public class CodeThing implements RealThing {
      * @param interp <code>Interp</code> value
      * @exception HeclException if an error occurs
      */
-    public synchronized Thing run(Interp interp) throws HeclException {
+    public Thing run(Interp interp) throws HeclException {
  	//++level;
 	//System.err.println("starting CodeThing run" + level);
         //System.out.println("RUNNING: " + this.getStringRep() +"</RUNNING>");
+	if (interp.compile) {
+	    /* Interps on other threads may be running this too: at
+	     * worst, they compile it more than once. */
+	    ByteCode bc = bytecode;
+	    if (bc == null && runs >= 0 && ++runs > 1) {
+		bc = ByteCode.compile(interp, this, 0);
+		bytecode = bc;
+		/* Don't try again if it can't be compiled. */
+		runs = -1;
+	    }
+	    if (bc != null) {
+		return bc.run(interp);
+	    }
+	}
 	Thing res = null;
-	for (Enumeration e = stanzas.elements(); e.hasMoreElements();) {
-	    Stanza s = (Stanza) e.nextElement();
-	    res = s.run(interp);
+	int sz = stanzas.size();
+	for (int i = 0; i < sz; i++) {
+	    res = ((Stanza)stanzas.elementAt(i)).run(interp);
 	}
 	if(res == null)
 	    res = Thing.emptyThing();
@@ -216,6 +275,21 @@ public class CodeThing implements RealThing {
 	return res;
     }
 
+    /**
+     * <code>varNames</code> adds to <code>names</code> the variables
+     * this code can be seen to use without running it.  Proc uses
+     * this to lay out its frames.
+     *
+     * @param interp an <code>Interp</code> value
+     * @param names a <code>Vector</code> of <code>String</code>s
+     */
+    void varNames(Interp interp, Vector names) {
+	int sz = stanzas.size();
+	for (int i = 0; i < sz; i++) {
+	    ((Stanza)stanzas.elementAt(i)).varNames(interp, names);
+	}
+    }
+
     /**
      * The <code>getStringRep</code> method returns a String representation of
      * the commands it represents.
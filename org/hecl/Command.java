@@ -35,7 +35,9 @@ public abstract interface Command {
      * @param interp
      *            an <code>Interp</code> value
      * @param argv
-     *            a <code>Thing[]</code> value
+     *            a <code>Thing[]</code> value.  The array may be reused
+     *            once the command returns, so commands that want to
+     *            keep the arguments must copy them out of it.
      * @return A <code>Thing</code> representing the computed value, or
      * <code>null</code>.
      * @exception HeclException
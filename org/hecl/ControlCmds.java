@@ -15,7 +15,6 @@ limitations under the License.
 
 package org.hecl;
 
-import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -34,6 +33,9 @@ class ControlCmds extends Operator {
     public static final int WHILE = 4;
     public static final int BREAK = 5;
     public static final int CONTINUE = 6;
+    public static final int PFOREACH = 7;
+    public static final int AFTER = 8;
+    public static final int VWAIT = 9;
 
     public Thing operate(int cmd, Interp interp, Thing[] argv) throws HeclException {
 	Thing res = null;
@@ -84,9 +86,9 @@ class ControlCmds extends Operator {
 		    /* body */
 		    interp.eval(argv[4]);
 		} catch (HeclException e) {
-		    if (e.code.equals(HeclException.BREAK)) {
+		    if (e.signal == HeclException.BREAKSIGNAL) {
 			break;
-		    } else if (e.code.equals(HeclException.CONTINUE)) {
+		    } else if (e.signal == HeclException.CONTINUESIGNAL) {
 		    } else {
 			throw e;
 		    }
@@ -98,11 +100,15 @@ class ControlCmds extends Operator {
 
 	  case FOREACH:
 	    /* The 'foreach' command. */
-	    Vector list = ListThing.get(argv[2]);
-	    if (list.size() == 0) {
+	    /* A packed list is read as it is, without unpacking it. */
+	    PackedListThing packed = argv[2].getVal() instanceof PackedListThing
+		? (PackedListThing)argv[2].getVal() : null;
+	    Vector list = packed == null ? ListThing.getReadOnly(argv[2]) : null;
+	    if ((packed != null ? packed.size() : list.size()) == 0) {
 		break;
 	    }
-	    Vector varlist = ListThing.get(argv[1]);
+	    Vector varlist = ListThing.getReadOnly(argv[1]);
+	    int nvars = varlist.size();
 	    int i = 0;
 	    boolean cont = true;
 
@@ -113,22 +119,23 @@ class ControlCmds extends Operator {
 		 * This is for foreach loops where we have more than one variable to
 		 * set: foreach {m n} $somelist { code ... }
 		 */
-		for (Enumeration e = varlist.elements(); e.hasMoreElements();) {
+		for (int v = 0; v < nvars; v++) {
 		    if (cont == false) {
 			throw new HeclException(
 			    "Foreach argument list does not match list length");
 		    }
 
-		    Thing element = (Thing) list.elementAt(i);
+		    Thing element = packed != null
+			? packed.elementAt(i) : (Thing) list.elementAt(i);
 		    element.copy = true; /* Make sure that we don't fiddle
 					  * with the original value. */
-		    String varname = ((Thing) e.nextElement()).toString();
+		    String varname = ((Thing) varlist.elementAt(v)).toString();
 
 		    // System.out.println("set " +varname+ " to " +element+ " copy: " + element.copy);
 
 		    interp.setVar(varname, element);
 		    i++;
-		    if (i == list.size()) {
+		    if (i == (packed != null ? packed.size() : list.size())) {
 			cont = false;
 		    }
 		}
@@ -136,9 +143,9 @@ class ControlCmds extends Operator {
 		try {
 		    res = interp.eval(argv[3]);
 		} catch (HeclException e) {
-		    if (e.code.equals(HeclException.BREAK)) {
+		    if (e.signal == HeclException.BREAKSIGNAL) {
 			break;
-		    } else if (e.code.equals(HeclException.CONTINUE)) {
+		    } else if (e.signal == HeclException.CONTINUESIGNAL) {
 		    } else {
 			throw e;
 		    }
@@ -146,15 +153,28 @@ class ControlCmds extends Operator {
 	    }
 	    break;
 
+	  case PFOREACH:
+	    /* The 'pforeach' command. */
+	    return ParallelForeach.run(interp, argv);
+
+	  case AFTER:
+	    /* The 'after' command. */
+	    return after(interp, argv);
+
+	  case VWAIT:
+	    /* The 'vwait' command. */
+	    vwait(interp, argv[1].toString());
+	    break;
+
 	  case WHILE:
 	    /* The 'while' command. */
 	    while (Thing.isTrue(interp.eval(argv[1]))) {
 		try {
 		    interp.eval(argv[2]);
 		} catch (HeclException e) {
-		    if (e.code.equals(HeclException.BREAK)) {
+		    if (e.signal == HeclException.BREAKSIGNAL) {
 			break;
-		    } else if (e.code.equals(HeclException.CONTINUE)) {
+		    } else if (e.signal == HeclException.CONTINUESIGNAL) {
 		    } else {
 			throw e;
 		    }
@@ -164,11 +184,11 @@ class ControlCmds extends Operator {
 
 	  case BREAK:
 	    /* The 'break' command. */
-	    throw new HeclException("", HeclException.BREAK);
+	    throw HeclException.createSignal(HeclException.BREAK, null);
 
 	  case CONTINUE:
 	    /* The 'continue' command. */
-	    throw new HeclException("", HeclException.CONTINUE);
+	    throw HeclException.createSignal(HeclException.CONTINUE, null);
 	  default:
 	    throw new HeclException("Unknown list command '"
 				    + argv[0].toString() + "' with code '"
@@ -177,6 +197,54 @@ class ControlCmds extends Operator {
 	return null;
     }
 
+    /**
+     * <code>after</code> implements 'after ms ?script?', 'after idle
+     * script' and 'after cancel id'.  Without a script, it just
+     * sleeps for <code>ms</code> milliseconds.
+     */
+    private static Thing after(Interp interp, Thing[] argv) throws HeclException {
+	EventLoop events = interp.eventLoop();
+	String what = argv[1].toString();
+	if (argv.length == 3 && what.equals("idle")) {
+	    return new Thing(events.idle(argv[2]));
+	} else if (argv.length == 3 && what.equals("cancel")) {
+	    events.cancel(argv[2].toString());
+	    return null;
+	}
+	int ms = IntThing.get(argv[1]);
+	if (argv.length == 3) {
+	    return new Thing(events.after(ms, argv[2]));
+	}
+	try {
+	    Thread.sleep(ms);
+	} catch (InterruptedException e) {
+	    throw new HeclException("interrupted");
+	}
+	return null;
+    }
+
+    /**
+     * <code>vwait</code> runs events until the global variable
+     * <code>name</code> is set.  With no events left that could set
+     * it, it would wait forever, so that is an error.
+     */
+    private static void vwait(Interp interp, String name) throws HeclException {
+	EventLoop events = interp.eventLoop();
+	Thing old = interp.existsVar(name, 0) ? interp.getVar(name, 0) : null;
+	String oldstr = old != null ? old.toString() : null;
+	while (true) {
+	    if (events.pending() == 0) {
+		throw new HeclException("can't wait for variable " + name
+					+ ": would wait forever");
+	    }
+	    events.runOne(true);
+	    Thing now = interp.existsVar(name, 0) ? interp.getVar(name, 0) : null;
+	    if (now != old || (now != null && !now.toString().equals(oldstr))) {
+		return;
+	    }
+	}
+    }
+
 
     public static void load(Interp ip) throws HeclException {
 	Operator.load(ip,cmdtable);
@@ -199,6 +267,9 @@ class ControlCmds extends Operator {
         cmdtable.put("if", new ControlCmds(IF,2,-1));
         cmdtable.put("for", new ControlCmds(FOR,4,4));
         cmdtable.put("foreach", new ControlCmds(FOREACH,3,3));
+        cmdtable.put("pforeach", new ControlCmds(PFOREACH,3,3));
+        cmdtable.put("after", new ControlCmds(AFTER,1,2));
+        cmdtable.put("vwait", new ControlCmds(VWAIT,1,1));
         cmdtable.put("while", new ControlCmds(WHILE,2,2));
         cmdtable.put("break", new ControlCmds(BREAK,0,0));
         cmdtable.put("continue", new ControlCmds(CONTINUE,0,0));
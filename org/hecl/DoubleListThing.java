@@ -0,0 +1,73 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+/**
+ * The <code>DoubleListThing</code> class is a list of <code>double</code>s.
+ *
+ * @version 1.0
+ */
+public class DoubleListThing extends PackedListThing {
+    private double[] val;
+
+    DoubleListThing(int capacity) {
+	val = new double[capacity];
+    }
+
+    boolean add(Thing t) {
+	RealThing rt = t.getVal();
+	if (!(rt instanceof DoubleThing)) {
+	    return false;
+	}
+	if (count == val.length) {
+	    double[] v = new double[grow(count)];
+	    System.arraycopy(val, 0, v, 0, count);
+	    val = v;
+	}
+	val[count++] = ((DoubleThing)rt).doubleValue();
+	return true;
+    }
+
+    Thing element(int i) {
+	return DoubleThing.create(val[i]);
+    }
+
+    String elementString(int i) {
+	return Double.toString(val[i]);
+    }
+
+    PackedListThing range(int first, int last) {
+	check(last);
+	return copy(first, last - first + 1);
+    }
+
+    void reorder(int[] order) {
+	double[] v = new double[val.length];
+	for (int i = 0; i < count; i++) {
+	    v[i] = val[order[i]];
+	}
+	val = v;
+    }
+
+    public RealThing deepcopy() {
+	return copy(0, count);
+    }
+
+    private DoubleListThing copy(int from, int n) {
+	DoubleListThing res = new DoubleListThing(n);
+	System.arraycopy(val, from, res.val, 0, n);
+	res.count = n;
+	return res;
+    }
+}
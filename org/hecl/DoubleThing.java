@@ -161,6 +161,7 @@ class DoubleThing extends FractionalThing {
       */
      public void set(double d) {
          val = d;
+         rep = null;
      }
  
      /**
@@ -179,10 +180,18 @@ class DoubleThing extends FractionalThing {
       * @return a <code>String</code> value
       */
      public String getStringRep() {
-         return Double.toString(val);
+         String s = rep;
+         if (s == null) {
+             s = Double.toString(val);
+             rep = s;
+         }
+         return s;
      }
  
  
      private double val;
 
+     /* The string, once it has been asked for. */
+     private String rep = null;
+
 }
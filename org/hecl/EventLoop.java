@@ -0,0 +1,218 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Vector;
+
+/**
+ * <code>EventLoop</code> is an interp's queue of things to do later:
+ * scripts set to run after a delay or when there is nothing else to
+ * do, by 'after', and <code>Runnable</code>s posted from other
+ * threads.  They are all run, one at a time, by the thread running
+ * the loop, which waits without using the CPU when none of them are
+ * due.
+ *
+ * <p>Events are taken in this order: anything posted, then timers
+ * that are due, soonest first, then idle scripts, but only when
+ * nothing else is waiting.  Scripts run at the global level, and an
+ * error in one is thrown out of whatever is running the loop.
+ *
+ * @version 1.0
+ */
+public class EventLoop {
+    private Interp interp;
+
+    /* Timers, the soonest due first. */
+    private Vector timers = new Vector();
+    private Vector idle = new Vector();
+    private Vector posted = new Vector();
+    private int nextid = 0;
+
+    EventLoop(Interp interp) {
+	this.interp = interp;
+    }
+
+    /**
+     * <code>after</code> sets <code>script</code> to run in
+     * <code>ms</code> milliseconds.
+     *
+     * @param ms a <code>long</code> value
+     * @param script a <code>Thing</code> value
+     * @return a <code>String</code> value - the id to cancel it with.
+     */
+    public synchronized String after(long ms, Thing script) {
+	Event ev = new Event(System.currentTimeMillis() + ms, script);
+	/* After any timers due at the same time, so that they run in
+	 * the order they were set. */
+	int lo = 0;
+	int hi = timers.size();
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (((Event)timers.elementAt(mid)).due <= ev.due) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+	timers.insertElementAt(ev, lo);
+	notifyAll();
+	return ev.id;
+    }
+
+    /**
+     * <code>idle</code> sets <code>script</code> to run the next time
+     * there is nothing else to do.
+     *
+     * @param script a <code>Thing</code> value
+     * @return a <code>String</code> value - the id to cancel it with.
+     */
+    public synchronized String idle(Thing script) {
+	Event ev = new Event(0, script);
+	idle.addElement(ev);
+	notifyAll();
+	return ev.id;
+    }
+
+    /**
+     * <code>cancel</code> drops the timer or idle script with the id
+     * <code>id</code>, if it has not run yet.
+     *
+     * @param id a <code>String</code> value
+     */
+    public synchronized void cancel(String id) {
+	if (!drop(timers, id)) {
+	    drop(idle, id);
+	}
+    }
+
+    /**
+     * <code>post</code> queues <code>r</code> to be run by the thread
+     * running the loop.  It may be called from any thread.
+     *
+     * @param r a <code>Runnable</code> value
+     */
+    public synchronized void post(Runnable r) {
+	posted.addElement(r);
+	notifyAll();
+    }
+
+    /**
+     * <code>pending</code> returns the number of events waiting,
+     * whether due or not.
+     *
+     * @return an <code>int</code> value
+     */
+    public synchronized int pending() {
+	return posted.size() + timers.size() + idle.size();
+    }
+
+    /**
+     * <code>runOne</code> runs the next event that is due.  If none
+     * is and <code>block</code> is set, it waits until one is.
+     *
+     * @param block a <code>boolean</code> value
+     * @return a <code>boolean</code> value - whether an event was run.
+     * @exception HeclException if an error occurs running the event
+     */
+    public boolean runOne(boolean block) throws HeclException {
+	Object ev = next(block);
+	if (ev == null) {
+	    return false;
+	}
+	if (ev instanceof Runnable) {
+	    ((Runnable)ev).run();
+	} else {
+	    interp.eval(((Event)ev).script, 0);
+	}
+	return true;
+    }
+
+    /**
+     * <code>run</code> runs events as they fall due, for as long as
+     * the thread is not interrupted.
+     *
+     * @exception HeclException if an error occurs running an event,
+     * or the thread is interrupted
+     */
+    public void run() throws HeclException {
+	while (true) {
+	    runOne(true);
+	}
+    }
+
+    /**
+     * <code>clear</code> drops every event.
+     */
+    synchronized void clear() {
+	timers.removeAllElements();
+	idle.removeAllElements();
+	posted.removeAllElements();
+    }
+
+    private synchronized Object next(boolean block) throws HeclException {
+	while (true) {
+	    if (posted.size() > 0) {
+		return take(posted);
+	    }
+	    long wait = 0;
+	    if (timers.size() > 0) {
+		wait = ((Event)timers.elementAt(0)).due
+		    - System.currentTimeMillis();
+		if (wait <= 0) {
+		    return take(timers);
+		}
+	    }
+	    if (idle.size() > 0) {
+		return take(idle);
+	    }
+	    if (!block) {
+		return null;
+	    }
+	    try {
+		/* Until the next timer, or until something changes. */
+		wait(wait);
+	    } catch (InterruptedException e) {
+		throw new HeclException("interrupted");
+	    }
+	}
+    }
+
+    private static Object take(Vector v) {
+	Object o = v.elementAt(0);
+	v.removeElementAt(0);
+	return o;
+    }
+
+    private static boolean drop(Vector v, String id) {
+	for (int i = 0; i < v.size(); i++) {
+	    if (((Event)v.elementAt(i)).id.equals(id)) {
+		v.removeElementAt(i);
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private class Event {
+	final long due;
+	final Thing script;
+	final String id;
+
+	Event(long due, Thing script) {
+	    this.due = due;
+	    this.script = script;
+	    this.id = "after#" + nextid++;
+	}
+    }
+}
@@ -0,0 +1,210 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+/**
+ * A <code>Frame</code> holds the variables of one level of the
+ * <code>Interp</code> stack.  Variables that a proc is known to use
+ * are kept in an array of slots, laid out once per proc; any other
+ * name (from upeval'd code, or built at run time) goes in a
+ * <code>Cell</code> kept in a <code>Hashtable</code>, which is only
+ * created when it is needed.  Once made, a cell stays with its name
+ * for the life of the frame (unsetting the variable just empties it),
+ * so <code>SubstThing</code> can hang on to it.
+ *
+ * @version 1.0
+ */
+public class Frame {
+    /**
+     * <code>slotindex</code> maps variable names to their slot.  It
+     * is shared by every frame of the same proc, and is
+     * <code>null</code> for frames without slots, such as the global
+     * frame.
+     */
+    final Hashtable slotindex;
+
+    /**
+     * <code>slots</code> holds the values of the slot variables, or
+     * <code>null</code> for slot variables that are not set.
+     */
+    final Thing[] slots;
+
+    /* Maps names to Cells. */
+    private Hashtable vars = null;
+
+    /**
+     * A <code>Cell</code> holds the value of one variable, or
+     * <code>null</code> if it is not set.
+     */
+    static final class Cell {
+	final Frame frame;
+	Thing value = null;
+
+	Cell(Frame frame) {
+	    this.frame = frame;
+	}
+    }
+
+    /**
+     * Creates a new <code>Frame</code> without slots.
+     */
+    Frame() {
+	this(null, 0);
+	vars = new Hashtable();
+    }
+
+    /**
+     * Creates a new <code>Frame</code> with the slot layout
+     * <code>slotindex</code>.
+     *
+     * @param slotindex a <code>Hashtable</code> mapping names to
+     * <code>Integer</code> slot numbers.
+     * @param nslots an <code>int</code> value - the number of slots.
+     */
+    Frame(Hashtable slotindex, int nslots) {
+	this.slotindex = slotindex;
+	this.slots = nslots > 0 ? new Thing[nslots] : null;
+    }
+
+    /**
+     * <code>slotOf</code> returns the slot of the variable
+     * <code>name</code>, or -1 if it doesn't have one in this frame.
+     *
+     * @param name a <code>String</code> value
+     * @return an <code>int</code> value
+     */
+    int slotOf(String name) {
+	if (slotindex == null) {
+	    return -1;
+	}
+	Integer i = (Integer)slotindex.get(name);
+	return i != null ? i.intValue() : -1;
+    }
+
+    /**
+     * <code>get</code> returns the value of <code>name</code>, or
+     * <code>null</code> if it isn't set in this frame.
+     *
+     * @param name a <code>String</code> value
+     * @return a <code>Thing</code> value
+     */
+    Thing get(String name) {
+	int slot = slotOf(name);
+	if (slot >= 0) {
+	    return slots[slot];
+	}
+	Cell cell = cell(name);
+	return cell != null ? cell.value : null;
+    }
+
+    /**
+     * <code>cell</code> returns the cell of <code>name</code>, or
+     * <code>null</code> if it has never been set or has a slot.
+     *
+     * @param name a <code>String</code> value
+     * @return a <code>Cell</code> value
+     */
+    Cell cell(String name) {
+	return vars != null ? (Cell)vars.get(name) : null;
+    }
+
+    /**
+     * <code>put</code> sets <code>name</code> to <code>value</code>
+     * in this frame.
+     *
+     * @param name a <code>String</code> value
+     * @param value a <code>Thing</code> value
+     */
+    void put(String name, Thing value) {
+	int slot = slotOf(name);
+	if (slot >= 0) {
+	    slots[slot] = value;
+	    return;
+	}
+	if (vars == null) {
+	    vars = new Hashtable();
+	}
+	Cell cell = (Cell)vars.get(name);
+	if (cell == null) {
+	    cell = new Cell(this);
+	    vars.put(name, cell);
+	}
+	cell.value = value;
+    }
+
+    /**
+     * <code>containsKey</code> returns true if <code>name</code> is
+     * set in this frame.
+     *
+     * @param name a <code>String</code> value
+     * @return a <code>boolean</code> value
+     */
+    boolean containsKey(String name) {
+	return get(name) != null;
+    }
+
+    /**
+     * <code>copyVars</code> puts the variables set in this frame into
+     * <code>dest</code>.
+     *
+     * @param dest a <code>Hashtable</code> mapping names to values.
+     */
+    void copyVars(Hashtable dest) {
+	if (slotindex != null) {
+	    for (Enumeration e = slotindex.keys(); e.hasMoreElements();) {
+		String name = (String)e.nextElement();
+		Thing value = slots[((Integer)slotindex.get(name)).intValue()];
+		if (value != null) {
+		    dest.put(name, value);
+		}
+	    }
+	}
+	if (vars == null) {
+	    return;
+	}
+	for (Enumeration e = vars.keys(); e.hasMoreElements();) {
+	    String name = (String)e.nextElement();
+	    Thing value = ((Cell)vars.get(name)).value;
+	    if (value != null) {
+		dest.put(name, value);
+	    }
+	}
+    }
+
+    /**
+     * <code>remove</code> unsets <code>name</code> in this frame,
+     * returning its old value.
+     *
+     * @param name a <code>String</code> value
+     * @return a <code>Thing</code> value
+     */
+    Thing remove(String name) {
+	int slot = slotOf(name);
+	if (slot >= 0) {
+	    Thing old = slots[slot];
+	    slots[slot] = null;
+	    return old;
+	}
+	Cell cell = cell(name);
+	if (cell == null) {
+	    return null;
+	}
+	Thing old = cell.value;
+	cell.value = null;
+	return old;
+    }
+}
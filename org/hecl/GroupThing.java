@@ -15,7 +15,6 @@
 
 package org.hecl;
 
-import java.util.Enumeration;
 import java.util.Vector;
 
 /**
@@ -74,7 +73,7 @@ public class GroupThing implements RealThing {
         RealThing realthing = thing.getVal();
 
         if (!(realthing instanceof GroupThing)) {
-            Vector group = new Vector();
+            Vector group = new ArrayVector(1);
             if (realthing instanceof CodeThing) {
                 group.addElement(thing);
             } else {
@@ -104,9 +103,10 @@ public class GroupThing implements RealThing {
      * @throws HeclException
      */
     public RealThing deepcopy() throws HeclException {
-        Vector newv = new Vector();
-        for (Enumeration e = val.elements(); e.hasMoreElements();) {
-            newv.addElement(((Thing) e.nextElement()).deepcopy());
+        int sz = val.size();
+        Vector newv = new ArrayVector(sz);
+        for (int i = 0; i < sz; i++) {
+            newv.addElement(((Thing) val.elementAt(i)).deepcopy());
         }
 
         return new GroupThing(newv);
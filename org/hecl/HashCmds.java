@@ -38,7 +38,7 @@ class HashCmds extends Operator {
 
 
     public Thing operate(int cmd, Interp interp, Thing[] argv) throws HeclException {
-	Hashtable hash = cmd != 0 ? HashThing.get(argv[1]) : null;
+	OrderedHash hash = cmd != 0 ? HashThing.get(argv[1]) : null;
 	Thing result = null;
 
 	switch (cmd) {
@@ -47,7 +47,7 @@ class HashCmds extends Operator {
 		break;
 
 	    case HGET:
-		result = (Thing)hash.get(argv[2].toString());
+		result = hash.get(argv[2].toString());
 		break;
 
 	    case HSET:
@@ -56,7 +56,7 @@ class HashCmds extends Operator {
 		break;
 
 	    case HKEYS:
-		Vector v = new Vector(hash.size());
+		Vector v = new ArrayVector(hash.size());
 		Enumeration e = hash.keys();
 		while(e.hasMoreElements()) {
 		    v.addElement(new Thing((String)e.nextElement()));
@@ -69,8 +69,8 @@ class HashCmds extends Operator {
 		break;
 
 	    case HREMOVE:
-		Object o = hash.remove(argv[2].toString());
-		result = o != null ? (Thing)o : new Thing("");
+		Thing o = hash.remove(argv[2].toString());
+		result = o != null ? o : new Thing("");
 		break;
 
 	    case HCONTAINS:
@@ -96,6 +96,16 @@ class HashCmds extends Operator {
 	Operator.unload(ip,cmdtable);
     }
 
+    boolean isPure() {
+	switch(cmdcode) {
+	  case HASH:
+	  case HGET:
+	  case HKEYS:
+	  case HCONTAINS:
+	    return true;
+	}
+	return false;
+    }
 
     protected HashCmds(int cmdcode,int minargs,int maxargs) {
 	super(cmdcode,minargs,maxargs);
@@ -21,29 +21,50 @@ import java.util.Enumeration;
 
 /**
  * The <code>HashThing</code> class represents a hash table type in Hecl.
+ * It is kept in an <code>OrderedHash</code>, so its keys come back in
+ * the order they were put in.
  * 
  * @author <a href="mailto:davidw@dedasys.com">David N. Welton </a>
  * @version 1.0
  */
 public class HashThing implements RealThing {
-    private Hashtable val = null;
+    private OrderedHash val = null;
+
+    /* The string rep as last made, after the keys and values it was
+     * made from, as in ListThing. */
+    private String[] rep = null;
 
     /**
      * Creates a new, empty <code>HashThing</code> instance.
      *  
      */
     public HashThing() {
-        val = new Hashtable();
+        val = new OrderedHash();
+    }
+
+    /**
+     * Creates a new <code>HashThing</code> instance from an OrderedHash.
+     * 
+     * @param h
+     *            an <code>OrderedHash</code> value
+     */
+    public HashThing(OrderedHash h) {
+        val = h;
     }
 
     /**
-     * Creates a new <code>HashThing</code> instance from a Hashtable.
+     * Creates a new <code>HashThing</code> instance from a Hashtable,
+     * by copying its entries, which must be Things.
      * 
      * @param h
      *            a <code>Hashtable</code> value
      */
     public HashThing(Hashtable h) {
-        val = h;
+        val = new OrderedHash(h.size());
+        for (Enumeration e = h.keys(); e.hasMoreElements();) {
+            String key = (String) e.nextElement();
+            val.put(key, (Thing) h.get(key));
+        }
     }
 
     /**
@@ -60,12 +81,7 @@ public class HashThing implements RealThing {
         if ((v.size() % 2) != 0) {
             throw new HeclException("list must have even number of elements");
         }
-        /*
-         * FIXME: I pulled this '3' (initial size of the hash table is list size +
-         * 3), out of the air... better suggestions based on experimentation are
-         * welcome.
-         */
-        val = new Hashtable((v.size() >> 1) + 3);
+        val = new OrderedHash(v.size() >> 1);
 
         for (Enumeration e = v.elements(); e.hasMoreElements();) {
             String key = ((Thing) e.nextElement()).toString();
@@ -82,6 +98,17 @@ public class HashThing implements RealThing {
      * <code>create</code> allocates and returns a new HashThing typed
      * Thing.
      *
+     * @param h an <code>OrderedHash</code> value
+     * @return a <code>Thing</code> value
+     */
+    public static Thing create(OrderedHash h) {
+        return new Thing(new HashThing(h));
+    }
+
+    /**
+     * <code>create</code> allocates and returns a new HashThing typed
+     * Thing, copying the entries of a Hashtable.
+     *
      * @param h a <code>Hashtable</code> value
      * @return a <code>Thing</code> value
      */
@@ -107,23 +134,23 @@ public class HashThing implements RealThing {
         }
 
         HashThing newthing = null;
-        Vector list = ListThing.get(thing);
+        Vector list = ListThing.getReadOnly(thing);
 
         newthing = new HashThing(list);
         thing.setVal(newthing);
     }
 
     /**
-     * <code>get</code> attempts to return a Hashtable from a given Thing, in
+     * <code>get</code> attempts to return an OrderedHash from a given Thing, in
      * the process transforming that Thing into a HashThing internally.
      * 
      * @param thing
      *            a <code>Thing</code> value
-     * @return a <code>Hashtable</code> value
+     * @return an <code>OrderedHash</code> value
      * @exception HeclException
      *                if an error occurs
      */
-    public static Hashtable get(Thing thing) throws HeclException {
+    public static OrderedHash get(Thing thing) throws HeclException {
         setHashFromAny(thing);
         HashThing gethash = (HashThing) thing.getVal();
 
@@ -153,11 +180,11 @@ public class HashThing implements RealThing {
      * @throws HeclException
      */
     public RealThing deepcopy() throws HeclException {
-        Hashtable h = new Hashtable();
+        OrderedHash h = new OrderedHash(val.size());
 
         for (Enumeration e = val.keys(); e.hasMoreElements();) {
             String key = (String) e.nextElement();
-            h.put(key, ((Thing) val.get(key)).deepcopy());
+            h.put(key, val.get(key).deepcopy());
         }
 
         return new HashThing(h);
@@ -173,15 +200,44 @@ public class HashThing implements RealThing {
      *                if an error occurs
      */
     public String getStringRep() {
-	ListThing newthing = null;
-	try {
-	    Vector v = ListThing.get(new Thing(new HashThing(val)));
-	    newthing = new ListThing(v);
-	} catch (HeclException he) {
-	    /* We should never get here because a hash is always a
-	     * well formed list. */
+	int sz = val.size();
+	if (sz == 0) {
+	    return "";
+	}
+	/* The keys and values as Strings, and then the string rep. */
+	String[] parts = new String[sz * 2 + 1];
+	int len = sz * 2;
+	int i = 0;
+	for (Enumeration e = val.keys(); e.hasMoreElements() && i < sz * 2;) {
+	    String key = (String) e.nextElement();
+	    parts[i++] = key;
+	    parts[i] = val.get(key).toString();
+	    len += key.length() + parts[i++].length();
+	}
+
+	/* If they are the same Strings as last time, so is the hash. */
+	String[] last = rep;
+	if (last != null && last.length == parts.length) {
+	    for (i = 0; i < sz * 2; i++) {
+		if (parts[i] != last[i]) {
+		    break;
+		}
+	    }
+	    if (i == sz * 2) {
+		return last[sz * 2];
+	    }
+	}
+
+	StringBuffer resbuf = new StringBuffer(len);
+	for (i = 0; i < sz * 2; i++) {
+	    if (i > 0) {
+		resbuf.append(' ');
+	    }
+	    ListThing.appendListItem(resbuf, parts[i]);
 	}
-        return newthing.getStringRep();
+	parts[sz * 2] = resbuf.toString();
+	rep = parts;
+	return parts[sz * 2];
     }
 
 }
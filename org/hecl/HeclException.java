@@ -40,6 +40,21 @@ public class HeclException extends Exception {
 
     static final String ERROR = "ERROR";
 
+    /**
+     * <code>signal</code> says whether this exception is a break,
+     * continue or return, so that loops and procs can check with an
+     * int compare rather than by comparing <code>code</code>.
+     */
+    int signal = NOSIGNAL;
+
+    static final int NOSIGNAL = 0;
+
+    static final int BREAKSIGNAL = 1;
+
+    static final int CONTINUESIGNAL = 2;
+
+    static final int RETURNSIGNAL = 3;
+
     /**
      * Creates a new <code>HeclException</code> instance.
      *
@@ -71,9 +86,49 @@ public class HeclException extends Exception {
 	this.message = new Thing(s);
 	this.value = value;
         this.code = exception_code;
+	/* Only the return command itself returns from a proc, but
+	 * 'throw' can break or continue a loop. */
+	if (exception_code == RETURN) {
+	    signal = RETURNSIGNAL;
+	} else if (BREAK.equals(exception_code)) {
+	    signal = BREAKSIGNAL;
+	} else if (CONTINUE.equals(exception_code)) {
+	    signal = CONTINUESIGNAL;
+	}
         pushException(s);
     }
 
+    /**
+     * <code>createSignal</code> creates the exception used by break,
+     * continue or return to unwind to the loop or proc that handles
+     * it.
+     *
+     * @param exception_code BREAK, CONTINUE or RETURN
+     * @param value the value to return, or <code>null</code>
+     * @return a <code>HeclException</code> value
+     */
+    static HeclException createSignal(String exception_code, Thing value) {
+	return new Signal(exception_code, value);
+    }
+
+    /**
+     * A <code>Signal</code> is a <code>HeclException</code> that
+     * doesn't record a Java stack trace: it is always caught by Hecl
+     * code, so the trace would never be seen, and filling it in is
+     * most of the cost of a break or continue.
+     */
+    private static class Signal extends HeclException {
+	private static final long serialVersionUID = 1L;
+
+	Signal(String exception_code, Thing value) {
+	    super("", exception_code, value);
+	}
+
+	public Throwable fillInStackTrace() {
+	    return this;
+	}
+    }
+
     /**
      * <code>pushException</code> adds to the exception stack.
      */
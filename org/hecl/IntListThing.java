@@ -0,0 +1,73 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+/**
+ * The <code>IntListThing</code> class is a list of <code>int</code>s.
+ *
+ * @version 1.0
+ */
+public class IntListThing extends PackedListThing {
+    private int[] val;
+
+    IntListThing(int capacity) {
+	val = new int[capacity];
+    }
+
+    boolean add(Thing t) {
+	RealThing rt = t.getVal();
+	if (!(rt instanceof IntThing)) {
+	    return false;
+	}
+	if (count == val.length) {
+	    int[] v = new int[grow(count)];
+	    System.arraycopy(val, 0, v, 0, count);
+	    val = v;
+	}
+	val[count++] = ((IntThing)rt).intValue();
+	return true;
+    }
+
+    Thing element(int i) {
+	return IntThing.create(val[i]);
+    }
+
+    String elementString(int i) {
+	return Integer.toString(val[i]);
+    }
+
+    PackedListThing range(int first, int last) {
+	check(last);
+	return copy(first, last - first + 1);
+    }
+
+    void reorder(int[] order) {
+	int[] v = new int[val.length];
+	for (int i = 0; i < count; i++) {
+	    v[i] = val[order[i]];
+	}
+	val = v;
+    }
+
+    public RealThing deepcopy() {
+	return copy(0, count);
+    }
+
+    private IntListThing copy(int from, int n) {
+	IntListThing res = new IntListThing(n);
+	System.arraycopy(val, from, res.val, 0, n);
+	res.count = n;
+	return res;
+    }
+}
@@ -163,6 +163,7 @@ public class IntThing extends IntegralThing {
      */
     public void set(int i) {
         val = i;
+        rep = null;
     }
 
     /**
@@ -181,8 +182,16 @@ public class IntThing extends IntegralThing {
      * @return a <code>String</code> value
      */
     public String getStringRep() {
-        return Integer.toString(val);
+        String s = rep;
+        if (s == null) {
+	s = Integer.toString(val);
+	rep = s;
+        }
+        return s;
     }
 
     private int val;
+
+    /* The string, once it has been asked for. */
+    private String rep = null;
 }
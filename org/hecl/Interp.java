@@ -15,6 +15,7 @@
 
 package org.hecl;
 
+import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Stack;
 import java.util.Vector;
@@ -25,17 +26,44 @@ import javax.microedition.lcdui.Display;
  * <code>Interp</code> is the Hecl interpreter, the class responsible for
  * knowing what variables and commands are available.
  *
+ * <p>The state of an evaluation - the stack of variable frames, the
+ * error stack and so on - belongs to the thread evaluating code in
+ * the interp, and is not locked: an interp is used by one thread at a
+ * time.  What can be shared between interps on different threads
+ * (parsed and compiled code, and the commands in the command table)
+ * is never changed in place once other threads may see it.
+ *
+ * <p>An <code>Interp</code> is not a <code>Thread</code>, as it once
+ * was (without ever running anything as one).  To evaluate code on
+ * another thread, call <code>eval</code> from a <code>Runnable</code>,
+ * or use the 'thread' command.
+ *
  * @author <a href="mailto:davidw@dedasys.com">David N. Welton </a>
  * @version 1.0
  */
-public class Interp extends Thread/*implements Runnable*/ {
+public class Interp {
 
     Display output = null;
 
+    /* Where 'puts' writes, if not to a Form on output. */
+    OutputSink sink = null;
+
     public Interp(Display d) throws HeclException {
         this();
         output = d;
     }
+
+    /**
+     * Creates a new <code>Interp</code> instance that needs no
+     * <code>Display</code>: 'puts' writes to <code>sink</code>.
+     *
+     * @param sink an <code>OutputSink</code> value
+     * @exception HeclException if an error occurs
+     */
+    public Interp(OutputSink sink) throws HeclException {
+        this();
+        this.sink = sink;
+    }
     /**
      * Package name prefix of the module classes.
      */
@@ -46,8 +74,10 @@ public class Interp extends Thread/*implements Runnable*/ {
      */
     static final Thing GLOBALREFTHING = new Thing("");
 
-    /* Used to cache command lookups. */
-    public long cacheversion = 0;
+    /* Compile code that is run more than once to ByteCode.  The
+     * Stanza tree walker is used for everything else, or for all
+     * code if this is turned off. */
+    public boolean compile = true;
 
     /* Do we have the Java reflection stuff? */
     private static boolean javacmdpresent = false;
@@ -55,9 +85,12 @@ public class Interp extends Thread/*implements Runnable*/ {
     /**
      * The <code>commands</code> <code>Hashtable</code> provides the
      * mapping from the strings containing command names to the code
-     * implementing the commands.
+     * implementing the commands.  It is copied on every change rather
+     * than changed in place, so that it can be read without locking,
+     * and so that Stanza can keep the Command it resolved for as long
+     * as <code>commands</code> is the same table.
      */
-    protected Hashtable commands = new Hashtable();
+    protected volatile Hashtable commands = new Hashtable();
 
     /**
      * The <code>auxdata</code> <code>Hashtable</code> is a place to
@@ -66,9 +99,39 @@ public class Interp extends Thread/*implements Runnable*/ {
      */
     protected Hashtable auxdata = new Hashtable();
 
-    protected Stack stack = new Stack();
+    /* The stack of variable frames, with the global frame at 0. */
+    private Frame[] frames = new Frame[16];
+    private int nframes = 0;
+
+    /* The call a proc body asked to have made in its place, by
+     * returning Proc.TAILCALL, and where it was made from. */
+    Proc tailproc = null;
+    Thing[] tailargv = null;
+    int tailline;
+    int tailreturnline;
+
+    /* Scripts set to run later, and work posted from other
+     * threads. */
+    private EventLoop events = new EventLoop(this);
+
+    /* Counts or samples calls, while 'intro profile' or 'intro
+     * sample' has it turned on. */
+    Profiler profiler = null;
+
+    /* What source strings have been parsed into. */
+    CodeCache codecache = new CodeCache(256);
+
+    /* Argument arrays for commands, reused from one call to the
+     * next: argvs[depth][n] is the array of n arguments for a
+     * command called while 'depth' others are already being called. */
+    private static final int MAXPOOLEDARGS = 8;
+    private Thing[][][] argvs = new Thing[16][][];
+    private int argvdepth = 0;
     protected Stack error = new Stack();
 
+    /* The Frame on top of the stack. */
+    Frame frame = null;
+
     protected Vector ci = new Vector();
     protected Hashtable classcmdcache = new Hashtable();
 
@@ -94,9 +157,101 @@ public class Interp extends Thread/*implements Runnable*/ {
     public Interp() throws HeclException {
 
         // Set up stack frame for globals.
-        stack.push(new Hashtable());
+        stackPush(new Frame());
         initInterp();
-	start();
+    }
+
+    /**
+     * Creates a new <code>Interp</code> set up as <code>pool</code>'s
+     * interps are.  Nothing is loaded: the command table is shared
+     * with the pool until one of them changes it.
+     *
+     * @param pool an <code>InterpPool</code> value
+     * @exception HeclException if an error occurs
+     */
+    Interp(InterpPool pool) throws HeclException {
+	reset(pool);
+    }
+
+    /**
+     * <code>fork</code> makes <code>n</code> new interps for other
+     * threads to use, each starting out with this one's commands and
+     * class commands, and a copy of its global variables and of the
+     * variables of the proc being run, if any.
+     *
+     * @param n an <code>int</code> value
+     * @return an <code>Interp[]</code> value
+     * @exception HeclException if an error occurs
+     */
+    Interp[] fork(int n) throws HeclException {
+	InterpPool pool = new InterpPool(this, 0);
+	Hashtable locals = null;
+	if (frame != globalFrame()) {
+	    locals = new Hashtable();
+	    frame.copyVars(locals);
+	}
+	Interp[] interps = new Interp[n];
+	for (int i = 0; i < n; i++) {
+	    Interp interp = pool.take();
+	    if (locals != null) {
+		Frame f = new Frame();
+		for (Enumeration e = locals.keys(); e.hasMoreElements();) {
+		    String name = (String)e.nextElement();
+		    Thing value = (Thing)locals.get(name);
+		    if (value != GLOBALREFTHING) {
+			value = value.deepcopy();
+		    }
+		    f.put(name, value);
+		}
+		interp.stackPush(f);
+	    }
+	    interps[i] = interp;
+	}
+	return interps;
+    }
+
+    /**
+     * <code>reset</code> puts the interp back the way
+     * <code>pool</code> hands out its interps: the pool's commands,
+     * class commands and global variables, and nothing else.
+     *
+     * @param pool an <code>InterpPool</code> value
+     * @exception HeclException if an error occurs
+     */
+    void reset(InterpPool pool) throws HeclException {
+	commands = pool.commands;
+	ci = new Vector();
+	for (int i = 0; i < pool.ci.size(); i++) {
+	    ClassCommandInfo info = (ClassCommandInfo)pool.ci.elementAt(i);
+	    ci.addElement(new ClassCommandInfo(info.forClass(),
+					       info.getCommand()));
+	}
+	classcmdcache.clear();
+	auxdata.clear();
+	/* Start each job with an empty cache and counters, as a new
+	 * interp does. */
+	codecache.reset();
+	error = new Stack();
+	events.clear();
+	if (profiler instanceof Sampler) {
+	    ((Sampler)profiler).stop();
+	}
+	profiler = null;
+	tailproc = null;
+	tailargv = null;
+	output = pool.output;
+	sink = pool.sink;
+	compile = pool.compile;
+
+	while (nframes > 0) {
+	    stackDecr();
+	}
+	Frame globals = new Frame();
+	for (Enumeration e = pool.globals.keys(); e.hasMoreElements();) {
+	    String name = (String)e.nextElement();
+	    globals.put(name, ((Thing)pool.globals.get(name)).deepcopy());
+	}
+	stackPush(globals);
     }
 
     /**
@@ -196,17 +351,53 @@ public class Interp extends Thread/*implements Runnable*/ {
      * @param c the command to add.
      */
     public synchronized String addCommand(String name,Command c) {
-	commands.put(name,c);
+	Hashtable newcommands = copyCommands();
+	newcommands.put(name,c);
+	commands = newcommands;
 	return name;
     }
 
+    /**
+     * <code>addCommands</code> adds every command in
+     * <code>cmdtable</code>, a <code>Hashtable</code> mapping names
+     * to commands, at once.
+     *
+     * @param cmdtable a <code>Hashtable</code> value
+     */
+    synchronized void addCommands(Hashtable cmdtable) {
+	Hashtable newcommands = copyCommands();
+	for (Enumeration e = cmdtable.keys(); e.hasMoreElements();) {
+	    Object name = e.nextElement();
+	    newcommands.put(name, cmdtable.get(name));
+	}
+	commands = newcommands;
+    }
+
     /**
      * Remove a command from an <code>Interp</code>.
      *
-     * @param name the name of the command to add.
+     * @param name the name of the command to remove.
      */
     public synchronized void removeCommand(String name) {
-	commands.remove(name);
+	Hashtable newcommands = copyCommands();
+	newcommands.remove(name);
+	commands = newcommands;
+    }
+
+    /**
+     * <code>copyCommands</code> returns a copy of the command table,
+     * to be changed and then put in place of the old one.
+     *
+     * @return a <code>Hashtable</code> value
+     */
+    private Hashtable copyCommands() {
+	Hashtable old = commands;
+	Hashtable copy = new Hashtable(old.size() * 2 + 1);
+	for (Enumeration e = old.keys(); e.hasMoreElements();) {
+	    Object key = e.nextElement();
+	    copy.put(key, old.get(key));
+	}
+	return copy;
     }
 
     /**
@@ -216,14 +407,14 @@ public class Interp extends Thread/*implements Runnable*/ {
      * @param name a <code>String</code> value
      * @return a <code>boolean</code> value
      */
-    public synchronized boolean commandExists(String name) {
+    public boolean commandExists(String name) {
 	return commands.containsKey(name);
     }
 
     /**
      * Attach auxiliary data to an <code>Interp</code>.
      */
-    public synchronized void setAuxData(String key,Object value) {
+    public void setAuxData(String key,Object value) {
 	auxdata.put(key, value);
     }
 
@@ -234,7 +425,7 @@ public class Interp extends Thread/*implements Runnable*/ {
      * @return a <code>Object</code> value or <code>null</code> when no
      * auxiliary data under the given key is attached to the interpreter.
      */
-    public synchronized Object getAuxData(String key) {
+    public Object getAuxData(String key) {
 	return auxdata.get(key);
     }
 
@@ -242,10 +433,46 @@ public class Interp extends Thread/*implements Runnable*/ {
     /**
      * Remove auxiliary data from an <code>Interp</code>.
      */
-    public synchronized void removeAuxData(String key) {
+    public void removeAuxData(String key) {
 	auxdata.remove(key);
     }
 
+
+    /**
+     * <code>setOutput</code> sets where 'puts' writes.  With no
+     * <code>OutputSink</code>, it uses the interp's
+     * <code>Display</code> if it has one, and standard output if not.
+     *
+     * @param sink an <code>OutputSink</code> value, or
+     * <code>null</code>
+     */
+    public void setOutput(OutputSink sink) {
+	this.sink = sink;
+    }
+
+
+    /**
+     * <code>getOutput</code> returns where 'puts' writes, as set
+     * with <code>setOutput</code>.
+     *
+     * @return an <code>OutputSink</code> value, or <code>null</code>
+     */
+    public OutputSink getOutput() {
+	return sink;
+    }
+
+
+    /**
+     * <code>eventLoop</code> returns the interp's event loop, for
+     * other threads to post work to, or for the interp's own thread
+     * to run.
+     *
+     * @return an <code>EventLoop</code> value
+     */
+    public EventLoop eventLoop() {
+	return events;
+    }
+
     /**
      * The <code>eval</code> method evaluates some Hecl code passed to
      * it.
@@ -254,7 +481,7 @@ public class Interp extends Thread/*implements Runnable*/ {
      * evaluation.
      * @exception HeclException if an error occurs.
      */
-    public synchronized Thing eval(Thing in) throws HeclException {
+    public Thing eval(Thing in) throws HeclException {
 	//System.err.println("-->eval: "+in.toString());
 	return CodeThing.get(this, in).run(this);
     }
@@ -275,7 +502,7 @@ public class Interp extends Thread/*implements Runnable*/ {
     public Thing eval(Thing in, int level) throws HeclException {
 	Thing result = null;
 	Vector savedstack = new Vector();
-	int stacklen = stack.size();
+	int stacklen = nframes;
 	int i = 0;
 	int end = 0;
 	HeclException save_exception = null;
@@ -300,7 +527,7 @@ public class Interp extends Thread/*implements Runnable*/ {
 	}
 	/* ... and then restore them after evaluating the code. */
 	for (i = savedstack.size() - 1; i >= 0; i--) {
-	    stackPush((Hashtable)savedstack.elementAt(i));
+	    stackPush((Frame)savedstack.elementAt(i));
 	}
 	if (save_exception != null) {
 	    throw save_exception;
@@ -349,8 +576,11 @@ public class Interp extends Thread/*implements Runnable*/ {
 	/* Hash table commands. */
 	HashCmds.load(this);
 
-        commands.put("puts", new PutsCmd());
-        commands.put("sort", new SortCmd());
+	/* Thread and channel commands. */
+	ThreadCmds.load(this);
+
+        addCommand("puts", new PutsCmd());
+        addCommand("sort", new SortCmd());
 
 
 	addClassCmd(Proc.class, new AnonProc());
@@ -369,7 +599,7 @@ public class Interp extends Thread/*implements Runnable*/ {
     public synchronized void cmdRename(String oldname, String newname)
 	throws HeclException {
 	cmdAlias(oldname, newname);
-	commands.remove(oldname);
+	removeCommand(oldname);
     }
 
     public synchronized void cmdAlias(String oldname, String newname)
@@ -378,49 +608,132 @@ public class Interp extends Thread/*implements Runnable*/ {
 	if (tmp == null) {
             throw new HeclException("Command " + oldname + " does not exist");
 	}
-	commands.put(newname, tmp);
+	addCommand(newname, tmp);
+    }
+
+
+    /**
+     * <code>takeArgv</code> returns an array of <code>n</code>
+     * Things to hold the arguments of a command.  It must be handed
+     * back with <code>releaseArgv</code> once the command is done,
+     * after which it will be used again for another command.
+     *
+     * @param n an <code>int</code> value
+     * @return a <code>Thing[]</code> value
+     */
+    Thing[] takeArgv(int n) {
+	int depth = argvdepth++;
+	if (n > MAXPOOLEDARGS) {
+	    return new Thing[n];
+	}
+	if (depth == argvs.length) {
+	    Thing[][][] newargvs = new Thing[depth * 2][][];
+	    System.arraycopy(argvs, 0, newargvs, 0, depth);
+	    argvs = newargvs;
+	}
+	Thing[][] level = argvs[depth];
+	if (level == null) {
+	    level = argvs[depth] = new Thing[MAXPOOLEDARGS + 1][];
+	}
+	Thing[] argv = level[n];
+	if (argv == null) {
+	    argv = level[n] = new Thing[n];
+	}
+	return argv;
     }
 
+    /**
+     * <code>releaseArgv</code> hands back an array from
+     * <code>takeArgv</code>.
+     *
+     * @param argv a <code>Thing[]</code> value
+     */
+    void releaseArgv(Thing[] argv) {
+	argvdepth--;
+	for (int i = 0; i < argv.length; i++) {
+	    argv[i] = null;
+	}
+    }
 
     /**
      * The <code>stackIncr</code> method creates a new stack frame. Used in
      * the Proc class.
      *
      */
-    public synchronized void stackIncr() {
-        stackPush(new Hashtable());
+    public void stackIncr() {
+        stackPush(new Frame());
     }
 
     /**
      * <code>stackDecr</code> pops the stack frame, returning it so that
      * commands like upeval can save it. If it's not saved, it's gone.
+     * It returns a <code>Frame</code>, not the <code>Hashtable</code>
+     * it used to, so it can only be pushed back as it is.
      *
+     * @return a <code>Frame</code> value
      */
-    public synchronized Hashtable stackDecr() {
-        return (Hashtable) stack.pop();
+    public Frame stackDecr() {
+        Frame top = frames[--nframes];
+        frames[nframes] = null;
+        frame = nframes > 0 ? frames[nframes - 1] : null;
+        return top;
     }
 
     /**
-     * <code>stackDecr</code> pushes a new variable hashtable
+     * <code>stackPush</code> pushes a frame of variables made from
+     * <code>vars</code>, which maps names to Things.  It is for
+     * callers that used to push a <code>Hashtable</code> as the frame:
+     * the frame is a copy, so setting variables in it no longer
+     * changes <code>vars</code>.
+     *
+     * @param vars a <code>Hashtable</code> value
+     */
+    public void stackPush(Hashtable vars) {
+	Frame f = new Frame();
+	for (Enumeration e = vars.keys(); e.hasMoreElements();) {
+	    String name = (String)e.nextElement();
+	    f.put(name, (Thing)vars.get(name));
+	}
+	stackPush(f);
+    }
+
+    /**
+     * <code>stackPush</code> pushes a new variable frame
      * (probably saved via upeval) onto the stack frame.
      *
      */
-    public synchronized void stackPush(Hashtable vars) {
-        cacheversion++;
-        stack.push(vars);
+    public void stackPush(Frame vars) {
+        if (nframes == frames.length) {
+            Frame[] newframes = new Frame[nframes * 2];
+            System.arraycopy(frames, 0, newframes, 0, nframes);
+            frames = newframes;
+        }
+        frames[nframes++] = vars;
+        frame = vars;
     }
 
     /**
-     * <code>getVarhash</code> fetches the variable Hashtable at the
-     * given level, where -1 means to just get the hashtable on top of
+     * <code>getVarhash</code> fetches the variable Frame at the
+     * given level, where -1 means to just get the frame on top of
      * the stack.
      *
      * @param level an <code>int</code> value
-     * @return a <code>Hashtable</code> value
+     * @return a <code>Frame</code> value
+     */
+    private Frame getVarhash(int level) {
+	if (level >= nframes) {
+	    throw new ArrayIndexOutOfBoundsException(level + " >= " + nframes);
+	}
+	return level < 0 ? frame : frames[level];
+    }
+
+    /**
+     * <code>globalFrame</code> returns the Frame of global variables.
+     *
+     * @return a <code>Frame</code> value
      */
-    private Hashtable getVarhash(int level) {
-	return level < 0 ? (Hashtable)stack.peek()
-	    : (Hashtable)stack.elementAt(level);
+    Frame globalFrame() {
+	return frames[0];
     }
 
     /**
@@ -455,14 +768,14 @@ public class Interp extends Thread/*implements Runnable*/ {
      * @return a <code>Thing</code> value
      * @exception HeclException if an error occurs
      */
-    public synchronized Thing getVar(String varname, int level) throws HeclException {
-        Hashtable lookup = getVarhash(level);
+    public Thing getVar(String varname, int level) throws HeclException {
+        Frame lookup = getVarhash(level);
 	//System.out.println("getvar: " + varname + " " + level + " " + lookup);
-        Thing res = (Thing) lookup.get(varname);
+        Thing res = lookup.get(varname);
 	if(res == GLOBALREFTHING) {
 	    // ref to a global var
-	    Hashtable globalhash = getVarhash(0);
-	    res = (Thing)globalhash.get(varname);
+	    Frame globalhash = getVarhash(0);
+	    res = globalhash.get(varname);
 	    if(res == GLOBALREFTHING) {
 		// should not happen, but just in case...
 		System.err.println("Unexpected GLOBALREFTHING in globalhash");
@@ -506,12 +819,9 @@ public class Interp extends Thread/*implements Runnable*/ {
      * @param value a <code>Thing</code> value
      * @param level an <code>int</code> value
      */
-    public synchronized void setVar(String varname, Thing value, int level) {
-        Hashtable lookup = getVarhash(level);
+    public void setVar(String varname, Thing value, int level) {
+        Frame lookup = getVarhash(level);
 
-	// Bump the cache number so that SubstThing.get refetches the
-	// variable.
-        cacheversion++;
 	//if(value == GLOBALREFTHING) System.err.println("flag '"+varname+"' as global on level="+level);
 	//System.err.println("set local("+level+") var="+varname + ", val="+value.toString());
 
@@ -531,7 +841,7 @@ public class Interp extends Thread/*implements Runnable*/ {
 	// first take care of GLOBALREFTHING used to flag ref to global var
 	if(value == GLOBALREFTHING) {
 	    // do not clutter global table with GLOBALREFTHING
-	    Hashtable globalhash = getVarhash(0);
+	    Frame globalhash = getVarhash(0);
 	    if(lookup != globalhash) {
 		//System.err.println(" not on global level");
 		lookup.put(varname, value);
@@ -541,8 +851,8 @@ public class Interp extends Thread/*implements Runnable*/ {
 	    return;
 	}
 	
-	if(lookup.containsKey(varname)) {
-	    Thing oldval = (Thing)lookup.get(varname);
+	Thing oldval = lookup.get(varname);
+	if(oldval != null) {
 	    if(oldval == GLOBALREFTHING) {
 		// level must be at != 0
 		//System.err.println(" forwarded to global value");
@@ -563,21 +873,18 @@ public class Interp extends Thread/*implements Runnable*/ {
 	unSetVar(varname.toString(),-1);
     }
 
-    public synchronized void unSetVar(String varname) throws HeclException {
+    public void unSetVar(String varname) throws HeclException {
 	unSetVar(varname,-1);
     }
     
-    public synchronized void unSetVar(String varname,int level) throws HeclException {
-        Hashtable lookup = getVarhash(level);
-	// Bump the cache number so that SubstThing.get refetches the
-	// variable.
-	Thing value = (Thing)lookup.get(varname);
+    public void unSetVar(String varname,int level) throws HeclException {
+        Frame lookup = getVarhash(level);
+	Thing value = lookup.get(varname);
 	if (value != null) {
-	    cacheversion++;
 	    lookup.remove(varname);
 	    if (value.global) {
-		Hashtable globalhash = getVarhash(0);
-		value = (Thing)globalhash.get(varname);
+		Frame globalhash = getVarhash(0);
+		value = globalhash.get(varname);
 		if (value != null) {
 		    globalhash.remove(varname);
 		}
@@ -621,8 +928,8 @@ public class Interp extends Thread/*implements Runnable*/ {
      * @param level an <code>int</code> value
      * @return a <code>boolean</code> value
      */
-    public synchronized boolean existsVar(String varname, int level) {
-        Hashtable lookup = getVarhash(level);
+    public boolean existsVar(String varname, int level) {
+        Frame lookup = getVarhash(level);
         return lookup.containsKey(varname);
     }
 
@@ -80,7 +80,7 @@ class InterpCmds extends Operator {
 
 	  case PROC:
 	      if (argv.length == 4) {
-		  interp.commands.put(argv[1].toString(), new Proc(argv[2], argv[3]));
+		  interp.addCommand(argv[1].toString(), new Proc(argv[2], argv[3]));
 	      } else {
 		  return ObjectThing.create(new Proc(argv[1], argv[2]));
 	      }
@@ -118,13 +118,62 @@ class InterpCmds extends Operator {
 	    } else if (subcmd.equals("proccode")) {
 		Proc p = (Proc)interp.commands.get(argv[2].toString());
 		return new Thing(p.getCode().getVal());
+	    } else if (subcmd.equals("codecache")) {
+		if (argv.length > 2 && argv[2].toString().equals("reset")) {
+		    interp.codecache.reset();
+		}
+		return interp.codecache.stats();
+	    } else if (subcmd.equals("profile")) {
+		/* intro profile ?on|off|reset? */
+		String what = argv.length > 2 ? argv[2].toString() : "";
+		Profiler prof = interp.profiler instanceof Sampler
+		    ? null : interp.profiler;
+		if (what.equals("on")) {
+		    if (prof == null) {
+			stopSampler(interp);
+			interp.profiler = prof = new Profiler();
+		    }
+		} else if (what.equals("off")) {
+		    if (prof != null) {
+			interp.profiler = null;
+		    }
+		} else if (what.equals("reset")) {
+		    if (prof != null) {
+			prof.reset();
+		    }
+		} else if (argv.length > 2) {
+		    throw HeclException.createWrongNumArgsException(
+			argv, 2, "?on|off|reset?");
+		}
+		return prof != null ? prof.results() : ListThing.create(results);
+	    } else if (subcmd.equals("sample")) {
+		/* intro sample ?on ?ms?|off|reset? */
+		String what = argv.length > 2 ? argv[2].toString() : "";
+		Sampler sampler = interp.profiler instanceof Sampler
+		    ? (Sampler)interp.profiler : null;
+		if (what.equals("on")) {
+		    if (sampler == null) {
+			int ms = argv.length > 3 ? IntThing.get(argv[3]) : 10;
+			interp.profiler = sampler = new Sampler(ms > 0 ? ms : 1);
+		    }
+		} else if (what.equals("off")) {
+		    stopSampler(interp);
+		} else if (what.equals("reset")) {
+		    if (sampler != null) {
+			sampler.reset();
+		    }
+		} else if (argv.length > 2) {
+		    throw HeclException.createWrongNumArgsException(
+			argv, 2, "?on ?ms?|off|reset?");
+		}
+		return sampler != null ? sampler.results() : new Thing("");
 	    }
 
 	    break;
 
 	  case RETURN:
-	    throw new HeclException("", HeclException.RETURN,
-				    argv.length > 1 ? argv[1] : Thing.emptyThing());
+	    throw HeclException.createSignal(HeclException.RETURN,
+				       argv.length > 1 ? argv[1] : Thing.emptyThing());
 
 	  case CATCH:
 	    try {
@@ -241,6 +290,17 @@ class InterpCmds extends Operator {
     }
 
 
+    /**
+     * <code>stopSampler</code> stops the interp's <code>Sampler</code>,
+     * if it has one running.
+     */
+    private static void stopSampler(Interp interp) {
+	if (interp.profiler instanceof Sampler) {
+	    ((Sampler)interp.profiler).stop();
+	    interp.profiler = null;
+	}
+    }
+
     public static void load(Interp ip) throws HeclException {
 	Operator.load(ip,cmdtable);
     }
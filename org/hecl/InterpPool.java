@@ -0,0 +1,131 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import javax.microedition.lcdui.Display;
+
+/**
+ * <code>InterpPool</code> hands out interps which all start out with
+ * the commands, class commands and global variables that the
+ * <code>Interp</code> it was made from had at the time.  Making a new
+ * one loads nothing, as the command table is shared until an interp
+ * changes it, and an interp handed back with <code>release</code> is
+ * reset and kept for the next <code>take</code>.
+ *
+ * <p>The pool may be used from any thread, but each interp it hands
+ * out is used by one thread at a time.  Procs defined in the
+ * <code>Interp</code> the pool was made from are shared by all its
+ * interps.
+ *
+ * @version 1.0
+ */
+public class InterpPool {
+    /* What each interp starts out with. */
+    final Hashtable commands;
+    final Vector ci = new Vector();
+    final Hashtable globals = new Hashtable();
+    final Display output;
+    final OutputSink sink;
+    final boolean compile;
+
+    private Vector interps = new Vector();
+    private int max;
+
+    /**
+     * Creates a new <code>InterpPool</code> of plain interps, keeping
+     * at most 8 idle ones.
+     *
+     * @exception HeclException if an error occurs
+     */
+    public InterpPool() throws HeclException {
+	this(new Interp(), 8);
+    }
+
+    /**
+     * Creates a new <code>InterpPool</code> of interps set up like
+     * <code>base</code>, which isn't itself part of the pool.
+     *
+     * @param base an <code>Interp</code> value
+     * @param max an <code>int</code> value - the most idle interps to
+     * keep.
+     * @exception HeclException if an error occurs
+     */
+    public InterpPool(Interp base, int max) throws HeclException {
+	this.commands = base.commands;
+	for (int i = 0; i < base.ci.size(); i++) {
+	    ClassCommandInfo info = (ClassCommandInfo)base.ci.elementAt(i);
+	    ci.addElement(new ClassCommandInfo(info.forClass(),
+					       info.getCommand()));
+	}
+	Hashtable vars = new Hashtable();
+	base.globalFrame().copyVars(vars);
+	for (Enumeration e = vars.keys(); e.hasMoreElements();) {
+	    String name = (String)e.nextElement();
+	    globals.put(name, ((Thing)vars.get(name)).deepcopy());
+	}
+	this.output = base.output;
+	this.sink = base.sink;
+	this.compile = base.compile;
+	this.max = max;
+    }
+
+    /**
+     * <code>take</code> returns an interp from the pool, making a new
+     * one if there are none idle.
+     *
+     * @return an <code>Interp</code> value
+     * @exception HeclException if an error occurs
+     */
+    public Interp take() throws HeclException {
+	Interp interp = null;
+	synchronized (interps) {
+	    int n = interps.size();
+	    if (n > 0) {
+		interp = (Interp)interps.elementAt(n - 1);
+		interps.removeElementAt(n - 1);
+	    }
+	}
+	return interp != null ? interp : new Interp(this);
+    }
+
+    /**
+     * <code>release</code> hands back an interp from
+     * <code>take</code>.  It is reset, dropping whatever was done in
+     * it, and kept if there is room.
+     *
+     * @param interp an <code>Interp</code> value
+     * @exception HeclException if an error occurs
+     */
+    public void release(Interp interp) throws HeclException {
+	interp.reset(this);
+	synchronized (interps) {
+	    if (interps.size() < max) {
+		interps.addElement(interp);
+	    }
+	}
+    }
+
+    /**
+     * <code>idle</code> returns the number of interps waiting to be
+     * taken.
+     *
+     * @return an <code>int</code> value
+     */
+    public int idle() {
+	return interps.size();
+    }
+}
@@ -46,24 +46,41 @@ class ListCmds extends Operator {
 	Vector list;
 	Vector result;
 	ListThing newval = null;
+	PackedListThing packed;
 
 	switch (cmd) {
 	    case LIST:
-		result = new Vector();
+		packed = PackedListThing.create(argv, 1, argv.length);
+		if (packed != null) {
+		    return new Thing(packed);
+		}
+		result = new ArrayVector(argv.length - 1);
 		for (int i = 1; i < argv.length; i++) {
 		    result.addElement(argv[i]);
 		}
 		return ListThing.create(result);
 
 	    case LLEN:
-		list = ListThing.get(argv[1]);
+		if (argv[1].getVal() instanceof PackedListThing) {
+		    return IntThing.create(
+			((PackedListThing)argv[1].getVal()).size());
+		}
+		list = ListThing.getReadOnly(argv[1]);
 		return IntThing.create(list.size());
 
 	    case LINDEX:
 	      {
 		  Thing res = argv[1];
 		  for(int i = 2; i < argv.length; ++i) {
-		      list = ListThing.get(res);
+		      if (res.getVal() instanceof PackedListThing) {
+			  packed = (PackedListThing)res.getVal();
+			  idx = getIndex(argv[i],packed.size());
+			  res = idx >= packed.size()
+			      ? ListThing.create(new Vector())
+			      : packed.elementAt(idx);
+			  continue;
+		      }
+		      list = ListThing.getReadOnly(res);
 		      last = list.size();
 		      idx = getIndex(argv[i],last);
 		      if (idx >= last) {
@@ -96,31 +113,61 @@ class ListCmds extends Operator {
 		return new Thing(newval);
 
 	    case LRANGE:
-		list = ListThing.get(argv[1]);
+		if (argv[1].getVal() instanceof PackedListThing) {
+		    packed = (PackedListThing)argv[1].getVal();
+		    int first = getIndex(argv[2],packed.size());
+		    last = getIndex(argv[3],packed.size());
+		    if (last < first || first > packed.size())
+			return Thing.emptyThing();
+		    return new Thing(packed.range(first, last));
+		}
+		list = ListThing.getReadOnly(argv[1]);
 		int ls = list.size();
 		int first = getIndex(argv[2],ls);
 		last = getIndex(argv[3],ls);
 		if (last < first || first > ls)
 		    return Thing.emptyThing();
-		result = new Vector();
+		result = new ArrayVector(last - first + 1);
 		for (int i = first; i <= last; i++) {
 		    result.addElement(list.elementAt(i));
 		}
 		return ListThing.create(result);
 
-	    case LAPPEND:
+	    case LAPPEND: {
+		int i = 2;
+		RealThing rt = argv[1].getVal();
+		if (rt instanceof PackedListThing) {
+		    packed = (PackedListThing)rt;
+		    while (i < argv.length && packed.pack(argv[i])) {
+			i++;
+		    }
+		    if (i == argv.length) {
+			return new Thing(packed);
+		    }
+		    /* Not a number of the right kind: unpack it. */
+		} else if (rt instanceof ListThing
+			   ? ((ListThing)rt).size() == 0
+			   : rt instanceof StringThing
+			   && rt.getStringRep().length() == 0) {
+		    packed = PackedListThing.create(argv, 2, argv.length);
+		    if (packed != null) {
+			argv[1].setCopyVal(packed);
+			return new Thing(packed);
+		    }
+		}
 		list = ListThing.get(argv[1]);
-		for (int i = 2; i < argv.length; i++) {
+		for (; i < argv.length; i++) {
 		    list.addElement(argv[i]);
 		}
 		newval = new ListThing(list);
 		argv[1].setCopyVal(newval);
 		return new Thing(newval);
+	    }
 
 	    case FILTER:
 	    case SEARCH:
-		list = ListThing.get(argv[1]);
-		result = new Vector();
+		list = ListThing.getReadOnly(argv[1]);
+		result = new ArrayVector();
 		String varname = argv[2].toString();
 		int sz = list.size();
 		Thing val;
@@ -145,7 +192,7 @@ class ListCmds extends Operator {
 		return ListThing.create(result);
 
 	    case JOIN:
-		list = ListThing.get(argv[1]);
+		list = ListThing.getReadOnly(argv[1]);
 		StringBuffer strres = new StringBuffer("");
 		boolean firstone = true;
 		String joinstr = null;
@@ -205,6 +252,18 @@ class ListCmds extends Operator {
 	Operator.unload(ip,cmdtable);
     }
 
+    boolean isPure() {
+	switch(cmdcode) {
+	  case LIST:
+	  case LLEN:
+	  case LINDEX:
+	  case LRANGE:
+	  case JOIN:
+	  case SPLIT:
+	    return true;
+	}
+	return false;
+    }
 
     protected ListCmds(int cmdcode,int minargs,int maxargs) {
 	super(cmdcode,minargs,maxargs);
@@ -16,12 +16,11 @@
 package org.hecl;
 
 import java.util.Vector;
-import java.util.Hashtable;
 import java.util.Enumeration;
 
 /**
  * The <code>ListThing</code> class implements lists, storing them internally
- * as a Vector.
+ * as a Vector - an ArrayVector, for those it makes itself.
  * 
  * @author <a href="mailto:davidw@dedasys.com">David N. Welton </a>
  * @version 1.0
@@ -29,6 +28,16 @@ import java.util.Enumeration;
 public class ListThing implements RealThing {
     protected Vector val = null;
 
+    /* When val is shared with copies of this list, the number of
+     * lists sharing it, counting this one; null when it is this
+     * list's own.  A shared val only holds literal elements. */
+    private int[] sharers = null;
+
+    /* The string rep as last made, after the Strings of the elements
+     * it was made from.  While the elements give the same Strings,
+     * it is still right, however the list has been used since. */
+    private String[] rep = null;
+
     private int depth = 0;
 
     /**
@@ -36,7 +45,7 @@ public class ListThing implements RealThing {
      *  
      */
     public ListThing() {
-        val = new Vector();
+        val = new ArrayVector();
     }
 
     /**
@@ -60,7 +69,7 @@ public class ListThing implements RealThing {
         /* FIXME - this probably doesn't handle newlines. */
         val = parseList.parse();
         if (val == null) {
-            val = new Vector();
+            val = new ArrayVector();
         }
     }
 
@@ -95,10 +104,12 @@ public class ListThing implements RealThing {
             return;
         }
 
-        RealThing newthing = null;
-        Vector newval = new Vector();
-	if (realthing instanceof HashThing) {
-            Hashtable h = HashThing.get(thing);
+        ListThing newthing = null;
+        Vector newval = new ArrayVector();
+	if (realthing instanceof PackedListThing) {
+	    newthing = new ListThing(((PackedListThing)realthing).toVector());
+	} else if (realthing instanceof HashThing) {
+            OrderedHash h = HashThing.get(thing);
 
             for (Enumeration e = h.keys(); e.hasMoreElements();) {
                 String key = (String) e.nextElement();
@@ -109,12 +120,24 @@ public class ListThing implements RealThing {
         } else {
             newthing = new ListThing(realthing.getStringRep());
         }
+	if (thing.literal) {
+	    /* The elements of a literal are part of the code too, and
+	     * are copied, as it is, when they are bound to a
+	     * variable. */
+	    Vector v = newthing.val;
+	    int sz = v.size();
+	    for (int i = 0; i < sz; i++) {
+		((Thing)v.elementAt(i)).literal = true;
+	    }
+	}
 	thing.setVal(newthing);
     }
 
     /**
      * <code>get</code> attempts to transform the given Thing into a List, and
-     * return its Vector value.
+     * return its Vector value, which the caller may change.  For a
+     * literal, which is part of some code and mustn't change, it is a
+     * copy.
      * 
      * @param thing a <code>Thing</code> value
      * @return a <code>Vector</code> value
@@ -123,17 +146,45 @@ public class ListThing implements RealThing {
     public static Vector get(Thing thing) throws HeclException {
         setListFromAny(thing);
         ListThing getlist = (ListThing) thing.getVal();
+	if (thing.literal) {
+	    /* Its elements are literals too, so they can be shared. */
+	    Vector v = getlist.val;
+	    int sz = v.size();
+	    Vector copy = new ArrayVector(sz);
+	    for (int i = 0; i < sz; i++) {
+		copy.addElement(v.elementAt(i));
+	    }
+	    return copy;
+	}
+	getlist.own();
+	return getlist.elements(thing);
+    }
 
+    /**
+     * <code>getReadOnly</code> is <code>get</code> for callers which
+     * only read the list: the Vector it returns may be shared with
+     * copies of the list, and must not be changed.
+     *
+     * @param thing a <code>Thing</code> value
+     * @return a <code>Vector</code> value
+     * @exception HeclException if an error occurs
+     */
+    public static Vector getReadOnly(Thing thing) throws HeclException {
+        setListFromAny(thing);
+	return ((ListThing) thing.getVal()).elements(thing);
+    }
+
+    private Vector elements(Thing thing) {
 	/* If the thing is slated for copying, it's elements should be
 	 * as well. */
  	if (thing.copy) {
-	    for (Enumeration e = getlist.val.elements(); e.hasMoreElements();) {
-		Thing te = (Thing) e.nextElement();
-		te.copy = true;
+	    int sz = val.size();
+	    for (int i = 0; i < sz; i++) {
+		((Thing)val.elementAt(i)).copy = true;
 	    }
 	}
 
-        return getlist.val;
+        return val;
     }
 
     /**
@@ -147,27 +198,98 @@ public class ListThing implements RealThing {
     public static Thing[] getArray(Thing thing) throws HeclException {
 	Vector v = ListThing.get(thing);
 	Thing[] res = new Thing[v.size()];
-	int i = 0;
-	for (Enumeration e = v.elements(); e.hasMoreElements();) {
-	    res[i] = (Thing)e.nextElement();
-	    i ++;
-	}
+	v.copyInto(res);
 	return res;
     }
 
+    /**
+     * <code>size</code> returns the number of elements in the list.
+     *
+     * @return an <code>int</code> value
+     */
+    public int size() {
+	return val.size();
+    }
+
     /**
      * <code>deepcopy</code> copies a list and all of its elements.
+     * Literal elements, which can't be changed, are shared rather
+     * than copied, and if they all are, so is the Vector holding
+     * them, until one of the lists is fetched with <code>get</code> to
+     * be changed.  Copying a list of literals then costs nothing.
      * 
      * @return a <code>RealThing</code> value
      * @throws HeclException
      */
     public RealThing deepcopy() throws HeclException {
-        Vector newv = new Vector();
-        for (Enumeration e = val.elements(); e.hasMoreElements();) {
-            newv.addElement(((Thing) e.nextElement()).deepcopy());
-        }
+	int sz = val.size();
+	Vector newv = null;
+	for (int i = 0; i < sz; i++) {
+	    Thing t = (Thing) val.elementAt(i);
+	    if (newv == null && !shareable(t)) {
+		/* Something may hold this element, and change it
+		 * later, so copy the elements now. */
+		newv = new ArrayVector(sz);
+		for (int j = 0; j < i; j++) {
+		    newv.addElement(val.elementAt(j));
+		}
+	    }
+	    if (newv != null) {
+		newv.addElement(shareable(t) ? t : t.deepcopy());
+	    }
+	}
 
-        return new ListThing(newv);
+	ListThing copy;
+	if (newv != null) {
+	    copy = new ListThing(newv);
+	} else {
+	    copy = new ListThing(val);
+	    if (sharers == null) {
+		sharers = new int[] {1};
+	    }
+	    synchronized (sharers) {
+		sharers[0]++;
+	    }
+	    copy.sharers = sharers;
+	}
+	copy.rep = rep;
+	return copy;
+    }
+
+    /* Literal elements can be shared, unless they hold lists or
+     * hashes, whose own elements are not literals. */
+    private static boolean shareable(Thing t) {
+	if (!t.literal) {
+	    return false;
+	}
+	RealThing rt = t.getVal();
+	return !(rt instanceof ListThing || rt instanceof HashThing
+		 || rt instanceof PackedListThing);
+    }
+
+    /**
+     * <code>own</code> makes the Vector this list's own, copying it if
+     * other lists still share it.  The last list left sharing it
+     * keeps it as it is.  Its elements are literals, so they
+     * needn't be copied.
+     */
+    private void own() {
+	int[] s = sharers;
+	if (s == null) {
+	    return;
+	}
+	synchronized (s) {
+	    if (s[0] > 1) {
+		int sz = val.size();
+		Vector newv = new ArrayVector(sz);
+		for (int i = 0; i < sz; i++) {
+		    newv.addElement(val.elementAt(i));
+		}
+		val = newv;
+	    }
+	    s[0]--;
+	}
+	sharers = null;
     }
 
     /**
@@ -192,8 +314,10 @@ public class ListThing implements RealThing {
     }
 
     public static StringBuffer appendListItem(StringBuffer buf,Thing thing) {
-        String elementstring = thing.toString();
+	return appendListItem(buf, thing.toString());
+    }
 
+    static StringBuffer appendListItem(StringBuffer buf, String elementstring) {
         if (elementstring.indexOf(' ') >= 0
 	    || elementstring.indexOf('\t') >= 0) {
 	    buf.append('{').append(elementstring).append('}');
@@ -289,14 +413,35 @@ public class ListThing implements RealThing {
 	    flags[i] = scanElement(elem);
 	}
 //#endif
-        StringBuffer resbuf = new StringBuffer();
+	/* If the elements give the same Strings as last time, so does
+	 * the list. */
+	String[] parts = rep;
+	if (parts != null && parts.length == sz + 1) {
+	    for (i = 0; i < sz; ++i) {
+		if (((Thing)val.elementAt(i)).toString() != parts[i]) {
+		    break;
+		}
+	    }
+	    if (i == sz) {
+		return parts[sz];
+	    }
+	}
+	parts = new String[sz + 1];
+	int len = sz;
+	for (i = 0; i < sz; ++i) {
+	    parts[i] = ((Thing)val.elementAt(i)).toString();
+	    len += parts[i].length();
+	}
+        StringBuffer resbuf = new StringBuffer(len);
 	for (i=0; i < sz; ++i) {
 	    if(i > 0)
 		resbuf.append(' ');
 	    //resbuf.append(toListString((Thing)val.elementAt(i)));
-	    appendListItem(resbuf,(Thing)val.elementAt(i));
+	    appendListItem(resbuf,parts[i]);
 	}
-        return resbuf.toString();
+	parts[sz] = resbuf.toString();
+	rep = parts;
+        return parts[sz];
     }
 
     /**
@@ -310,7 +455,7 @@ public class ListThing implements RealThing {
     public static Thing stringSplit(String str, String splitstr) {
 	int idx = 0;
 	int last = 0;
-	Vector result = new Vector();
+	Vector result = new ArrayVector();
 	if (splitstr == null) {
 	    /* By default, we split on spaces. */
 	    splitstr = " ";
@@ -24,6 +24,9 @@ public class LongThing extends FractionalThing {
     /* The internal value. */
     private long val;
 
+    /* The string, once it has been asked for. */
+    private String rep = null;
+
     /**
      * Creates a new <code>LongThing</code> instance equal to 0.
      *
@@ -175,6 +178,7 @@ public class LongThing extends FractionalThing {
      */
     public void set(long l) {
         val = l;
+        rep = null;
     }
 
     /**
@@ -193,6 +197,11 @@ public class LongThing extends FractionalThing {
      * @return a <code>String</code> value
      */
     public String getStringRep() {
-        return Long.toString(val);
+        String s = rep;
+        if (s == null) {
+	s = Long.toString(val);
+	rep = s;
+        }
+        return s;
     }
 }
@@ -325,20 +325,8 @@ public class MathCmds extends org.hecl.Operator {
 	    }
 	    return new Thing(num);
 	  case INCR:
-	      num = NumberThing.asNumber(argv[1]);
-	      if(!num.isIntegral()) {
-		  throw new HeclException("Argument '" + argv[1].toString()
-					  + "' not an integer.");
-	      }
-	      NumberThing offset = argv.length > 2 ?
-		  NumberThing.asNumber(argv[2]) : IntThing.ONE;
-	      if(((IntegralThing)num).isLong()) {
-		  num = new LongThing(num.longValue() + offset.longValue());
-	      } else {
-		  num = new IntThing(num.intValue() + offset.intValue());
-	      }
-	      argv[1].setCopyVal(num);
-	      return new Thing(num);
+	      return incr(argv[1], argv.length > 2 ?
+			  NumberThing.asNumber(argv[2]) : IntThing.ONE);
 	  default:
 	    /*
 	    Command c = extensions.get(cmdcode);
@@ -356,6 +344,99 @@ public class MathCmds extends org.hecl.Operator {
     }
 
 
+    /**
+     * <code>incr</code> adds <code>offset</code> to the integer held
+     * in <code>var</code>, in place.
+     *
+     * @param var a <code>Thing</code> value
+     * @param offset a <code>NumberThing</code> value
+     * @return a <code>Thing</code> holding the new value.
+     * @exception HeclException if var isn't an integer
+     */
+    static Thing incr(Thing var, NumberThing offset) throws HeclException {
+	NumberThing num = NumberThing.asNumber(var);
+	if(!num.isIntegral()) {
+	    throw new HeclException("Argument '" + var.toString()
+				    + "' not an integer.");
+	}
+	if(((IntegralThing)num).isLong()) {
+	    num = new LongThing(num.longValue() + offset.longValue());
+	} else {
+	    num = new IntThing(num.intValue() + offset.intValue());
+	}
+	var.setCopyVal(num);
+	return new Thing(num);
+    }
+
+    boolean isPure() {
+	switch(cmdcode) {
+	  case RANDOM:
+	  case INCR:
+	  case DECR:
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * <code>isDirect</code> returns true if this command, called with
+     * <code>argc</code> arguments (counting the command itself), can
+     * be run with <code>direct</code>.
+     *
+     * @param argc an <code>int</code> value
+     * @return a <code>boolean</code> value
+     */
+    boolean isDirect(int argc) {
+	if(1 == minargs && 1 == maxargs)
+	    return argc == 2;
+	if(2 == minargs && 2 == maxargs)
+	    return argc == 3;
+	switch(cmdcode) {
+	  case PLUS:
+	  case MINUS:
+	  case MUL:
+	    return argc == 3;
+	  case INCR:
+	    return argc == 2 || argc == 3;
+	}
+	return false;
+    }
+
+    /**
+     * <code>direct</code> runs the command on one or two arguments
+     * without going through <code>cmdCode</code>, which saves
+     * building an argv and checking its length each time.  The
+     * result is the same as that of <code>operate</code>.
+     *
+     * @param ip an <code>Interp</code> value
+     * @param a the first argument
+     * @param b the second argument, or <code>null</code>
+     * @return a <code>Thing</code> value
+     * @exception HeclException if an error occurs
+     */
+    Thing direct(Interp ip, Thing a, Thing b) throws HeclException {
+	if(1 == minargs && 1 == maxargs)
+	    return unary(cmdcode,ip,NumberThing.asNumber(a));
+	switch(cmdcode) {
+	  case PLUS:
+	  case MINUS: {
+	      /* operate starts from 0, and 0 + -0.0 is 0.0. */
+	      NumberThing x = NumberThing.asNumber(a);
+	      if (!x.isIntegral()) {
+		  x = (NumberThing)binary(BINADD,ip,IntThing.ZERO,x).getVal();
+	      }
+	      return binary(cmdcode == PLUS ? BINADD : BINSUB,ip,x,
+			    NumberThing.asNumber(b));
+	  }
+	  case MUL:
+	    return binary(BINMUL,ip,NumberThing.asNumber(a),
+			  NumberThing.asNumber(b));
+	  case INCR:
+	    return incr(a, b != null ? NumberThing.asNumber(b) : IntThing.ONE);
+	}
+	return binary(cmdcode,ip,NumberThing.asNumber(a),NumberThing.asNumber(b));
+    }
+
     public static void load(Interp ip) throws HeclException {
 	Enumeration e = vars.keys();
 	while(e.hasMoreElements()) {
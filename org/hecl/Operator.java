@@ -92,6 +92,18 @@ public abstract class Operator implements Command {
     public abstract Thing operate(int cmdcode,Interp interp,Thing[] argv)
 	throws HeclException;
 
+    /**
+     * <code>isPure</code> returns true if the command works out its
+     * result from its arguments alone, without changing them or
+     * anything else, so that calling it on literals can be done once,
+     * when the code is parsed.
+     *
+     * @return a <code>boolean</code> value
+     */
+    boolean isPure() {
+	return false;
+    }
+
 
     /**
      * The <code>load</code> method loads the commands in a class that
@@ -102,12 +114,7 @@ public abstract class Operator implements Command {
      */
     protected static void load(Interp ip,Hashtable cmdtable) throws HeclException {
 	//	System.err.println("-->Operator.load, ip="+ip+", cmdtable="+cmdtable);
-	Enumeration e = cmdtable.keys();
-	while(e.hasMoreElements()) {
-	    String k = (String)e.nextElement();
-	    //	    System.err.println("cmd="+k);
-	    ip.addCommand(k, (Command)cmdtable.get(k));
-	}
+	ip.addCommands(cmdtable);
 	//	System.err.println("<<--Operator.load");
     }
 
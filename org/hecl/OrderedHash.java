@@ -0,0 +1,230 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * <code>OrderedHash</code> is the table behind a <code>HashThing</code>:
+ * a map from <code>String</code> keys to Things that gives its keys
+ * back in the order they were first put in.
+ *
+ * <p>The entries are kept in order in three arrays - keys, values and
+ * hash codes - and found through an index array, at least twice as
+ * long, of entry numbers placed by hash code.  Removing an entry only
+ * clears it; the space is got back when the arrays are next grown.
+ * Like <code>ArrayVector</code>, it does no locking.
+ *
+ * @version 1.0
+ */
+public class OrderedHash {
+    private String[] keys;
+    private Thing[] values;
+    private int[] hashes;
+
+    /* Entry number + 1, or 0 for none.  Its length is a power of
+     * two. */
+    private int[] index;
+
+    /* Entries used, counting removed ones, and entries in the
+     * table. */
+    private int used = 0;
+    private int count = 0;
+
+    /**
+     * Creates a new, empty <code>OrderedHash</code> instance.
+     */
+    public OrderedHash() {
+	this(0);
+    }
+
+    /**
+     * Creates a new, empty <code>OrderedHash</code> instance with room
+     * for <code>capacity</code> entries.
+     *
+     * @param capacity an <code>int</code> value
+     */
+    public OrderedHash(int capacity) {
+	alloc(capacity < 4 ? 4 : capacity);
+    }
+
+    private void alloc(int capacity) {
+	keys = new String[capacity];
+	values = new Thing[capacity];
+	hashes = new int[capacity];
+	int n = 8;
+	while (n < capacity * 2) {
+	    n <<= 1;
+	}
+	index = new int[n];
+    }
+
+    public int size() {
+	return count;
+    }
+
+    public boolean isEmpty() {
+	return count == 0;
+    }
+
+    public Thing get(String key) {
+	int e = find(key, hash(key));
+	return e < 0 ? null : values[e];
+    }
+
+    public boolean containsKey(String key) {
+	return find(key, hash(key)) >= 0;
+    }
+
+    /**
+     * <code>put</code> sets the value of <code>key</code>.  A key that
+     * is already there keeps its place in the order.
+     *
+     * @param key a <code>String</code> value
+     * @param value a <code>Thing</code> value
+     * @return a <code>Thing</code> value - the old value, or
+     * <code>null</code>.
+     */
+    public Thing put(String key, Thing value) {
+	int h = hash(key);
+	int e = find(key, h);
+	if (e >= 0) {
+	    Thing old = values[e];
+	    values[e] = value;
+	    return old;
+	}
+	if (used == keys.length) {
+	    grow();
+	}
+	e = used++;
+	keys[e] = key;
+	values[e] = value;
+	hashes[e] = h;
+	place(e, h);
+	count++;
+	return null;
+    }
+
+    public Thing remove(String key) {
+	int e = find(key, hash(key));
+	if (e < 0) {
+	    return null;
+	}
+	Thing old = values[e];
+	/* The index still points here, so that looking up keys
+	 * placed after it goes on past it. */
+	keys[e] = null;
+	values[e] = null;
+	count--;
+	return old;
+    }
+
+    public void clear() {
+	alloc(4);
+	used = 0;
+	count = 0;
+    }
+
+    /**
+     * <code>keys</code> returns the keys, in the order they were put
+     * in.
+     *
+     * @return an <code>Enumeration</code> of <code>String</code>s
+     */
+    public Enumeration keys() {
+	return new Entries(true);
+    }
+
+    /**
+     * <code>elements</code> returns the values, in the order their
+     * keys were put in.
+     *
+     * @return an <code>Enumeration</code> of Things
+     */
+    public Enumeration elements() {
+	return new Entries(false);
+    }
+
+    private static int hash(String key) {
+	int h = key.hashCode();
+	return h ^ (h >>> 16);
+    }
+
+    /* Returns the entry holding key, or -1. */
+    private int find(String key, int h) {
+	int mask = index.length - 1;
+	for (int i = h & mask; ; i = (i + 1) & mask) {
+	    int e = index[i] - 1;
+	    if (e < 0) {
+		return -1;
+	    }
+	    if (hashes[e] == h && key.equals(keys[e])) {
+		return e;
+	    }
+	}
+    }
+
+    private void place(int e, int h) {
+	int mask = index.length - 1;
+	int i = h & mask;
+	while (index[i] != 0) {
+	    i = (i + 1) & mask;
+	}
+	index[i] = e + 1;
+    }
+
+    /* Makes room for more entries, dropping removed ones: it only
+     * grows the arrays if at least half of them are in use. */
+    private void grow() {
+	String[] oldkeys = keys;
+	Thing[] oldvalues = values;
+	int[] oldhashes = hashes;
+	int n = used;
+	alloc(count >= n / 2 ? n * 2 : n);
+	used = 0;
+	for (int i = 0; i < n; i++) {
+	    if (oldkeys[i] != null) {
+		keys[used] = oldkeys[i];
+		values[used] = oldvalues[i];
+		hashes[used] = oldhashes[i];
+		place(used, oldhashes[i]);
+		used++;
+	    }
+	}
+    }
+
+    private class Entries implements Enumeration {
+	private boolean wantkeys;
+	private int i = 0;
+
+	Entries(boolean keys) {
+	    wantkeys = keys;
+	}
+
+	public boolean hasMoreElements() {
+	    while (i < used && keys[i] == null) {
+		i++;
+	    }
+	    return i < used;
+	}
+
+	public Object nextElement() {
+	    if (!hasMoreElements()) {
+		throw new NoSuchElementException();
+	    }
+	    return wantkeys ? (Object)keys[i++] : values[i++];
+	}
+    }
+}
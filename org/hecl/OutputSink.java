@@ -0,0 +1,40 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+/**
+ * An <code>OutputSink</code> is where 'puts' writes when an interp
+ * has one, set with <code>Interp.setOutput</code>, instead of showing
+ * a <code>Form</code> on the interp's <code>Display</code>.
+ *
+ * @version 1.0
+ */
+public interface OutputSink {
+    /**
+     * <code>write</code> writes <code>s</code>, or keeps it to write
+     * later.
+     *
+     * @param s a <code>String</code> value
+     * @exception HeclException if an error occurs
+     */
+    void write(String s) throws HeclException;
+
+    /**
+     * <code>flush</code> writes anything kept back by
+     * <code>write</code>.
+     *
+     * @exception HeclException if an error occurs
+     */
+    void flush() throws HeclException;
+}
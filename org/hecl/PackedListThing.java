@@ -0,0 +1,226 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Vector;
+
+/**
+ * <code>PackedListThing</code> is a list of numbers all of one kind,
+ * kept in an array of <code>int</code>, <code>long</code> or
+ * <code>double</code> rather than as a <code>Vector</code> of Things.
+ * 'list' and 'lappend' make one when all the values they are given
+ * are literal numbers of the same kind, and 'llen', 'lindex', 'lrange',
+ * 'lappend', 'sort' and 'foreach' use it as it is.  Anything else
+ * that wants the list turns it into a <code>ListThing</code>, as
+ * does storing something other than a number of that kind in it.
+ *
+ * <p>The elements are values rather than Things: each
+ * <code>elementAt</code> returns a new Thing, so changing one in
+ * place doesn't change the list.  That is why only literals are
+ * packed: a list of Things holds any other Thing itself, such as a
+ * variable's, and changes when it does, and a packed list must
+ * behave the same.
+ *
+ * @version 1.0
+ */
+public abstract class PackedListThing implements RealThing {
+    protected int count = 0;
+
+    /* The string rep, and the count it was made at: elements are
+     * only ever added, or reordered by sort, which drops it. */
+    private String rep = null;
+    private int repcount;
+
+    /**
+     * <code>create</code> packs <code>argv[from]</code> to
+     * <code>argv[to - 1]</code> into a new list, if they are all
+     * literal numbers of the same kind.
+     *
+     * @param argv a <code>Thing[]</code> value
+     * @param from an <code>int</code> value
+     * @param to an <code>int</code> value
+     * @return a <code>PackedListThing</code> value, or
+     * <code>null</code> if they can't be packed, or there are none.
+     */
+    static PackedListThing create(Thing[] argv, int from, int to) {
+	if (from >= to) {
+	    return null;
+	}
+	PackedListThing packed;
+	RealThing rt = argv[from].getVal();
+	if (rt instanceof IntThing) {
+	    packed = new IntListThing(to - from);
+	} else if (rt instanceof LongThing) {
+	    packed = new LongListThing(to - from);
+	} else if (rt instanceof DoubleThing) {
+	    packed = new DoubleListThing(to - from);
+	} else {
+	    return null;
+	}
+	for (int i = from; i < to; i++) {
+	    if (!packed.pack(argv[i])) {
+		return null;
+	    }
+	}
+	return packed;
+    }
+
+    /**
+     * <code>size</code> returns the number of elements.
+     *
+     * @return an <code>int</code> value
+     */
+    public int size() {
+	return count;
+    }
+
+    /**
+     * <code>elementAt</code> returns a new Thing holding element
+     * <code>i</code>.
+     *
+     * @param i an <code>int</code> value
+     * @return a <code>Thing</code> value
+     */
+    public Thing elementAt(int i) {
+	check(i);
+	return element(i);
+    }
+
+    /**
+     * <code>pack</code> adds the value of <code>t</code> to the end of
+     * the list, if it is a literal number of the right kind.
+     *
+     * @param t a <code>Thing</code> value
+     * @return a <code>boolean</code> value - whether it was added.
+     */
+    boolean pack(Thing t) {
+	return t.literal && add(t);
+    }
+
+    /**
+     * <code>add</code> adds the value of <code>t</code> to the end of
+     * the list, if it is a number of the right kind.
+     *
+     * @param t a <code>Thing</code> value
+     * @return a <code>boolean</code> value - whether it was added.
+     */
+    abstract boolean add(Thing t);
+
+    /**
+     * <code>range</code> returns a new list of elements
+     * <code>first</code> to <code>last</code>.
+     */
+    abstract PackedListThing range(int first, int last);
+
+    abstract Thing element(int i);
+
+    abstract String elementString(int i);
+
+    /* Puts the elements in the order given by their old indexes. */
+    abstract void reorder(int[] order);
+
+    /**
+     * <code>toVector</code> returns the elements as a
+     * <code>Vector</code> of Things, as a <code>ListThing</code> holds
+     * them.
+     *
+     * @return a <code>Vector</code> value
+     */
+    Vector toVector() {
+	Vector v = new ArrayVector(count);
+	for (int i = 0; i < count; i++) {
+	    v.addElement(element(i));
+	}
+	return v;
+    }
+
+    /**
+     * <code>sort</code> sorts the list in place, comparing the
+     * elements as strings, as 'sort' does.
+     */
+    void sort() {
+	String[] keys = new String[count];
+	int[] order = new int[count];
+	for (int i = 0; i < count; i++) {
+	    keys[i] = elementString(i);
+	    order[i] = i;
+	}
+	mergesort(keys, order, new String[count], new int[count], 0, count);
+	reorder(order);
+	rep = null;
+    }
+
+    private static void mergesort(String[] keys, int[] order,
+				  String[] tmpkeys, int[] tmporder,
+				  int lo, int hi) {
+	if (hi - lo < 2) {
+	    return;
+	}
+	int mid = (lo + hi) >>> 1;
+	mergesort(keys, order, tmpkeys, tmporder, lo, mid);
+	mergesort(keys, order, tmpkeys, tmporder, mid, hi);
+	int i = lo;
+	int j = mid;
+	for (int k = lo; k < hi; k++) {
+	    if (j >= hi || (i < mid && keys[i].compareTo(keys[j]) <= 0)) {
+		tmpkeys[k] = keys[i];
+		tmporder[k] = order[i++];
+	    } else {
+		tmpkeys[k] = keys[j];
+		tmporder[k] = order[j++];
+	    }
+	}
+	System.arraycopy(tmpkeys, lo, keys, lo, hi - lo);
+	System.arraycopy(tmporder, lo, order, lo, hi - lo);
+    }
+
+    public String thingclass() {
+	return "list";
+    }
+
+    /**
+     * <code>getStringRep</code> returns the elements separated by
+     * spaces.  Numbers never need braces.
+     *
+     * @return a <code>String</code> value
+     */
+    public String getStringRep() {
+	String s = rep;
+	int n = count;
+	if (s != null && repcount == n) {
+	    return s;
+	}
+	StringBuffer sb = new StringBuffer();
+	for (int i = 0; i < n; i++) {
+	    if (i > 0) {
+		sb.append(' ');
+	    }
+	    sb.append(elementString(i));
+	}
+	s = sb.toString();
+	rep = s;
+	repcount = n;
+	return s;
+    }
+
+    protected void check(int i) {
+	if (i < 0 || i >= count) {
+	    throw new ArrayIndexOutOfBoundsException(i + " >= " + count);
+	}
+    }
+
+    protected int grow(int capacity) {
+	return capacity < 8 ? 8 : capacity * 2;
+    }
+}
@@ -0,0 +1,187 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Vector;
+
+/**
+ * <code>ParallelForeach</code> implements the 'pforeach' command,
+ * which is like 'foreach', but runs the body for several elements of
+ * the list at once, on worker threads, and returns the list of the
+ * body's results, in order.
+ *
+ * <p>Each worker has an interp of its own, forked from the calling
+ * one: it shares the commands and the parsed body, and starts with a
+ * copy of the global variables and of those of the calling proc.
+ * Nothing the body does to variables is seen outside it.
+ *
+ * <p>Workers take the elements in order.  A 'break' stops elements
+ * after it from being started, and the results end there; an error
+ * does the same, and is thrown once the workers are done, saying
+ * which element it happened on.  If several elements fail, the
+ * first one's error is thrown.
+ *
+ * @version 1.0
+ */
+class ParallelForeach implements Runnable {
+
+    /* The most workers to run at once. */
+//#ifdef j2se
+    private static final int WORKERS =
+	Runtime.getRuntime().availableProcessors();
+//#else
+    private static final int WORKERS = 2;
+//#endif
+
+    private Vector list;
+    private Vector varnames;
+    private Thing body;
+    private Thing[] results;
+
+    /* The next iteration to start, and the first one not to. */
+    private int next = 0;
+    private int stop;
+    private HeclException error = null;
+
+    /* The workers' interps, and how many workers have started. */
+    private Interp[] interps;
+    private int started = 0;
+
+    private ParallelForeach(Vector list, Vector varnames, Thing body,
+			    int n) {
+	this.list = list;
+	this.varnames = varnames;
+	this.body = body;
+	this.results = new Thing[n];
+	this.stop = n;
+    }
+
+    /**
+     * <code>run</code> runs 'pforeach' with <code>argv</code>.
+     *
+     * @param interp an <code>Interp</code> value
+     * @param argv a <code>Thing[]</code> value
+     * @return a <code>Thing</code> value
+     * @exception HeclException if an error occurs
+     */
+    static Thing run(Interp interp, Thing[] argv) throws HeclException {
+	Vector list = ListThing.getReadOnly(argv[2]);
+	Vector varlist = ListThing.getReadOnly(argv[1]);
+	int nvars = varlist.size();
+	if (nvars == 0) {
+	    throw new HeclException("pforeach needs at least one variable");
+	}
+	if (list.size() % nvars != 0) {
+	    throw new HeclException(
+		"Foreach argument list does not match list length");
+	}
+	int n = list.size() / nvars;
+	if (n == 0) {
+	    return ListThing.create(new Vector());
+	}
+	Vector varnames = new Vector();
+	for (int i = 0; i < nvars; i++) {
+	    varnames.addElement(varlist.elementAt(i).toString());
+	}
+
+	/* Parse the body now, so that the workers share it. */
+	CodeThing.get(interp, argv[3]);
+	ParallelForeach pf = new ParallelForeach(list, varnames, argv[3], n);
+
+	int nworkers = WORKERS < n ? WORKERS : n;
+	pf.interps = interp.fork(nworkers);
+
+	/* The calling thread is the first worker. */
+	Thread[] threads = new Thread[nworkers - 1];
+	for (int i = 0; i < threads.length; i++) {
+	    threads[i] = new Thread(pf);
+	    threads[i].start();
+	}
+	pf.run();
+	for (int i = 0; i < threads.length; i++) {
+	    while (true) {
+		try {
+		    threads[i].join();
+		    break;
+		} catch (InterruptedException e) {
+		}
+	    }
+	}
+
+	if (pf.error != null) {
+	    throw pf.error;
+	}
+	Vector result = new Vector(pf.stop);
+	for (int i = 0; i < pf.stop; i++) {
+	    result.addElement(pf.results[i]);
+	}
+	return ListThing.create(result);
+    }
+
+    /**
+     * <code>run</code> is what each worker does: run the body for
+     * the next element until there are none left.
+     */
+    public void run() {
+	Interp interp;
+	synchronized (this) {
+	    interp = interps[started++];
+	}
+	int nvars = varnames.size();
+	int i;
+	while ((i = claim()) >= 0) {
+	    try {
+		for (int j = 0; j < nvars; j++) {
+		    Thing element = (Thing)list.elementAt(i * nvars + j);
+		    element.copy = true; /* As in foreach. */
+		    interp.setVar((String)varnames.elementAt(j), element);
+		}
+		results[i] = interp.eval(body);
+	    } catch (HeclException e) {
+		if (e.signal == HeclException.CONTINUESIGNAL) {
+		    results[i] = Thing.emptyThing();
+		} else if (e.signal == HeclException.BREAKSIGNAL) {
+		    stopAt(i, null);
+		} else {
+		    stopAt(i, e);
+		}
+	    } catch (RuntimeException e) {
+		stopAt(i, Stanza.javaException(e, 0));
+	    }
+	}
+    }
+
+    /**
+     * <code>claim</code> returns the next iteration to run, or -1 if
+     * there are none left.
+     */
+    private synchronized int claim() {
+	return next < stop ? next++ : -1;
+    }
+
+    /**
+     * <code>stopAt</code> stops the loop at iteration <code>i</code>,
+     * because of <code>e</code>, or because of a break if
+     * <code>e</code> is <code>null</code>.
+     */
+    private synchronized void stopAt(int i, HeclException e) {
+	if (i < stop) {
+	    stop = i;
+	    if (e != null && e.signal == HeclException.NOSIGNAL) {
+		e.where("element", i);
+	    }
+	    error = e;
+	}
+    }
+}
@@ -84,7 +84,7 @@ public class Parse {
      * @exception HeclException if an error occurs
      */
     public Vector parse() throws HeclException {
-        outList = new Vector();
+        outList = new ArrayVector();
 	newCurrent();
         state.eoc = false;
 
@@ -142,7 +142,7 @@ public class Parse {
      * @exception HeclException if an error occurs
      */
     protected void newCurrent() throws HeclException {
-	outGroup = new Vector();
+	outGroup = new ArrayVector();
 	outBufused = false;
     }
 
@@ -175,7 +175,7 @@ public class Parse {
 	    }
 	    outList.addElement(newthing.setLiteral());
 	} else if (outGroup.size() > 1) {
-	    Vector outv = new Vector();
+	    Vector outv = new ArrayVector();
 	    for (Enumeration e = outGroup.elements(); e.hasMoreElements();) {
 		RealThing rt = (RealThing)e.nextElement();
 		outv.addElement(new Thing(rt).setLiteral());
@@ -69,7 +69,7 @@ public class PrintThing {
             System.out.println(ws(depth * 4) + "SUBST: "
                     + ((SubstThing) rt).getStringRep() + " (copy: " + t.copy +") (literal: " + t.literal +")");
         } else if (rt instanceof ListThing) {
-            Vector v = ListThing.get(t);
+            Vector v = ListThing.getReadOnly(t);
             System.out.println(ws(depth * 4) + "LIST START" + " (copy: " + t.copy +") (literal: " + t.literal +")");
             for (Enumeration e = v.elements(); e.hasMoreElements();) {
                 PrintThing.printThing((Thing) e.nextElement(), depth + 1);
@@ -83,12 +83,12 @@ public class PrintThing {
             }
             System.out.println(ws(depth * 4) + "GROUP END");
         } else if (rt instanceof HashThing) {
-            Hashtable h = HashThing.get(t);
+            OrderedHash h = HashThing.get(t);
             System.out.println(ws(depth * 4) + "HASH START" + " (copy: " + t.copy +") (literal: " + t.literal +")");
             for (Enumeration e = h.keys(); e.hasMoreElements();) {
                 String key = (String) e.nextElement();
                 System.out.println(ws(depth * 4) + " KEY: " + key);
-                PrintThing.printThing((Thing) h.get(key), depth + 1);
+                PrintThing.printThing(h.get(key), depth + 1);
             }
             System.out.println(ws(depth * 4) + "HASH END");
         } else if (rt instanceof CodeThing) {
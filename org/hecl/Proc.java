@@ -15,6 +15,7 @@
 
 package org.hecl;
 
+import java.util.Hashtable;
 import java.util.Vector;
 
 /**
@@ -32,11 +33,32 @@ class Proc implements Command {
     private int argcount;
 
     /**
-     * <code>refcount</code> is used to ensure that, if we recurse
-     * into this proc, that when we leave it, the cache version is
-     * bumped.
+     * <code>slotindex</code> maps the names of the variables this
+     * proc uses to slots in its frames, and <code>argslots</code>
+     * gives the slot of each argument.  They are worked out the first
+     * time the proc is called.
      */
-    private int refcount = 0;
+    private volatile Hashtable slotindex = null;
+    private int nslots = 0;
+    private int[] argslots = null;
+
+    /**
+     * The second time a proc is called, its body is compiled to
+     * ByteCode of its own, which is run directly for as long as the
+     * body is still the code it was compiled from.  Once it has been
+     * called <code>HOTCALLS</code> times, it is compiled again as
+     * hot code.
+     */
+    static final int HOTCALLS = 50;
+    private int calls = 0;
+    private volatile ByteCode bytecode = null;
+
+    /**
+     * <code>TAILCALL</code> is returned by the body of a proc to ask
+     * for the call in <code>Interp.tailproc</code> and
+     * <code>Interp.tailargv</code> to be made in its place.
+     */
+    static final Thing TAILCALL = new Thing("");
 
      /**
      * Creates a new <code>Proc</code> instance, with the variable names in
@@ -49,7 +71,7 @@ class Proc implements Command {
 	throws HeclException {
         this.code = cmdcode;
 
-        Vector varnames = ListThing.get(cmdvars);
+        Vector varnames = ListThing.getReadOnly(cmdvars);
 	int argc = varnames.size();
 
 	this.argnames = new String[argc];
@@ -64,7 +86,106 @@ class Proc implements Command {
      */
     private static final String VARARGVARNAME = "args";
 
+    /**
+     * <code>layoutFrame</code> assigns a slot to each argument and to
+     * each variable the proc body can be seen to use.
+     *
+     * @param interp an <code>Interp</code> value
+     * @return the new <code>slotindex</code>
+     * @exception HeclException if the body can't be parsed
+     */
+    private Hashtable layoutFrame(Interp interp) throws HeclException {
+	Vector names = new Vector();
+	for (int i = 0; i < argnames.length; i++) {
+	    names.addElement(argnames[i]);
+	}
+	CodeThing.get(interp, this.code).varNames(interp, names);
+
+	Hashtable index = new Hashtable();
+	int sz = names.size();
+	for (int i = 0; i < sz; i++) {
+	    Object name = names.elementAt(i);
+	    if (!index.containsKey(name)) {
+		index.put(name, new Integer(index.size()));
+	    }
+	}
+	int[] slots = new int[argnames.length];
+	for (int i = 0; i < slots.length; i++) {
+	    slots[i] = ((Integer)index.get(argnames[i])).intValue();
+	}
+	/* slotindex is set last, so that an interp on another thread
+	 * that sees it also sees the rest. */
+	nslots = index.size();
+	argslots = slots;
+	slotindex = index;
+	return index;
+    }
+
     public Thing cmdCode(Interp interp, Thing[] argv) throws HeclException {
+	Proc proc = this;
+	TailCalls tailcalls = null;
+
+	/* Make tail calls from here, rather than from inside the body
+	 * of the proc making them, so that the Java stack doesn't grow
+	 * with them.  The frame of a proc that made a tail call is kept
+	 * until the call returns, so that upeval levels count it, as
+	 * they would if the call had been made from inside it. */
+	int kept = 0;
+	try {
+	    while (true) {
+		Thing res;
+		/* The first call is counted by whoever made it. */
+		Profiler prof = tailcalls != null ? interp.profiler : null;
+		if (prof != null) {
+		    prof.enter(argv[0], interp.tailline);
+		}
+		try {
+		    res = proc.call(interp, argv);
+		} catch (HeclException e) {
+		    if (tailcalls != null) {
+			tailcalls.where(e);
+		    }
+		    throw e;
+		} catch (RuntimeException e) {
+		    if (tailcalls == null) {
+			throw e;
+		    }
+		    throw tailcalls.where(e);
+		} finally {
+		    if (prof != null) {
+			prof.exit(argv[0]);
+		    }
+		}
+		if (res != TAILCALL) {
+		    return res;
+		}
+		kept++;
+		if (tailcalls == null) {
+		    tailcalls = new TailCalls();
+		}
+		proc = interp.tailproc;
+		argv = interp.tailargv;
+		interp.tailproc = null;
+		interp.tailargv = null;
+		tailcalls.add(argv[0].toString(), interp.tailline,
+			      interp.tailreturnline);
+	    }
+	} finally {
+	    while (kept-- > 0) {
+		interp.stackDecr();
+	    }
+	}
+    }
+
+    /**
+     * <code>call</code> calls the proc itself, with its own frame.
+     *
+     * @param interp an <code>Interp</code> value
+     * @param argv a <code>Thing[]</code> value
+     * @return a <code>Thing</code> value
+     * @exception HeclException if an error occurs
+     */
+    private Thing call(Interp interp, Thing[] argv) throws HeclException {
 	Vector vargvals = null;
 
         /* Create the argument variables. */
@@ -84,30 +205,39 @@ class Proc implements Command {
 	if (i > argc && vargvals == null)
 	    throw new HeclException("proc " + argv[0]
 				    + " has too many arguments");
-        /* Push a new frame onto the stack. */
-        interp.stackIncr();
-	refcount ++;
-	try {
-	    /* Set the variables from argv.  Add one to argv, because
-	     * argv0 is the name of the proc itself. */
-	    for (i = 0; i < argc; i++) {
-		//System.err.println("set "+this.argnames[i]+"="+argv[i + 1].toString());
-		interp.setVar(this.argnames[i],argv[i + 1]);
-	    }
+	Hashtable index = slotindex;
+	if (index == null) {
+	    index = layoutFrame(interp);
+	}
 
-	    /* Hoover up anything left over as varargs. */
-	    for (; i < argv.length - 1; i++ ) {
-		vargvals.addElement(argv[i + 1]);
+	/* Set the variables from argv.  Add one to argv, because
+	 * argv0 is the name of the proc itself.  Literals are copied,
+	 * as Interp.setVar would. */
+	Frame frame = new Frame(index, nslots);
+	for (i = 0; i < argc; i++) {
+	    Thing val = argv[i + 1];
+	    if (val.isLiteral()) {
+		val = val.deepcopy();
 	    }
-	    if(vargvals != null)
-		interp.setVar(VARARGVARNAME, ListThing.create(vargvals));
+	    frame.slots[argslots[i]] = val;
+	}
+
+	/* Hoover up anything left over as varargs. */
+	for (; i < argv.length - 1; i++ ) {
+	    vargvals.addElement(argv[i + 1]);
+	}
+	if(vargvals != null)
+	    frame.slots[argslots[argc]] = ListThing.create(vargvals);
 
+        /* Push the new frame onto the stack. */
+        interp.stackPush(frame);
+	Thing res = null;
+	try {
 	    /* We actually run the code here. */
-	    Thing res = null;
 	    try {
-		res = interp.eval(this.code);
+		res = run(interp);
 	    } catch (HeclException e) {
-		if (e.code != HeclException.RETURN) {
+		if (e.signal != HeclException.RETURNSIGNAL) {
 		    throw e;
 		} else {
 		    res = e.value;
@@ -116,14 +246,110 @@ class Proc implements Command {
 	    return res;
 	}
 	finally {
-	    /* We're done, pop the stack. */
-	    refcount --;
-	    if (refcount > 0) {
-		interp.cacheversion ++;
+	    /* We're done, pop the stack - unless the body asked for a
+	     * tail call, when cmdCode pops it once that returns. */
+	    if (res != TAILCALL) {
+		interp.stackDecr();
 	    }
-	    interp.stackDecr();
 	}
     }
+    /**
+     * <code>run</code> runs the body of the proc, once its frame has
+     * been pushed.
+     *
+     * @param interp an <code>Interp</code> value
+     * @return a <code>Thing</code> value
+     * @exception HeclException if an error occurs
+     */
+    private Thing run(Interp interp) throws HeclException {
+	if (interp.compile) {
+	    if (calls >= 0) {
+		++calls;
+		if (calls == 2 || calls == HOTCALLS) {
+		    CodeThing codething = CodeThing.get(interp, this.code);
+		    int flags = ByteCode.PROC;
+		    if (calls == HOTCALLS) {
+			flags |= ByteCode.HOT;
+			calls = -1;
+		    }
+		    bytecode = ByteCode.compile(interp, codething, flags);
+		}
+	    }
+	    ByteCode bc = bytecode;
+	    if (bc != null && this.code.getVal() == bc.codething) {
+		return bc.run(interp);
+	    }
+	}
+	return interp.eval(this.code);
+    }
+
+    /**
+     * <code>TailCalls</code> remembers the tail calls made by
+     * <code>cmdCode</code>, so that an error can be reported as if
+     * each had been made from the proc before it.  Runs of the same
+     * call, as made by a proc calling itself, are kept as a count.
+     */
+    private static class TailCalls {
+	private String[] names = new String[4];
+	private int[] lines = new int[4];
+	private int[] returnlines = new int[4];
+	private int[] counts = new int[4];
+	private int size = 0;
+
+	void add(String name, int line, int returnline) {
+	    int last = size - 1;
+	    if (last >= 0 && lines[last] == line
+		&& returnlines[last] == returnline && names[last].equals(name)) {
+		counts[last]++;
+		return;
+	    }
+	    if (size == names.length) {
+		String[] newnames = new String[size * 2];
+		int[] newlines = new int[size * 2];
+		int[] newreturnlines = new int[size * 2];
+		int[] newcounts = new int[size * 2];
+		System.arraycopy(names, 0, newnames, 0, size);
+		System.arraycopy(lines, 0, newlines, 0, size);
+		System.arraycopy(returnlines, 0, newreturnlines, 0, size);
+		System.arraycopy(counts, 0, newcounts, 0, size);
+		names = newnames;
+		lines = newlines;
+		returnlines = newreturnlines;
+		counts = newcounts;
+	    }
+	    names[size] = name;
+	    lines[size] = line;
+	    returnlines[size] = returnline;
+	    counts[size] = 1;
+	    size++;
+	}
+
+	/**
+	 * <code>where</code> adds the calls to the exception stack of
+	 * <code>e</code>, innermost first, the way Stanza.invoke would
+	 * have, had they been made from there.
+	 */
+	HeclException where(Exception e) throws HeclException {
+	    HeclException he = null;
+	    if (e instanceof HeclException) {
+		he = (HeclException)e;
+	    }
+	    for (int i = size - 1; i >= 0; i--) {
+		for (int j = 0; j < counts[i]; j++) {
+		    if (he == null) {
+			he = Stanza.javaException(e, lines[i]);
+		    } else {
+			he.where(names[i], lines[i]);
+		    }
+		    if (returnlines[i] >= 0) {
+			he.setLine(returnlines[i]);
+		    }
+		}
+	    }
+	    return he;
+	}
+    }
+
     /**
      * <code>getCode</code> returns the proc's code.
      *
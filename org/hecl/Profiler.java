@@ -0,0 +1,188 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * <code>Profiler</code> counts the calls made to each command and
+ * proc in an interp, with the time spent in them, both in all
+ * (inclusive) and leaving out the commands they call (exclusive), and
+ * the bytes allocated meanwhile.  It is turned on with 'intro profile
+ * on', which sets <code>Interp.profiler</code>; while that is
+ * <code>null</code>, the only cost is checking it once per call.
+ *
+ * <p>Calls are counted by the name they are made with.  Commands
+ * that compiled code runs inline, such as 'if', 'while' and simple
+ * math in hot procs, are not counted, though the code they run is.
+ *
+ * <p><code>Sampler</code> uses the same hooks to keep track of the
+ * calls in progress instead.
+ *
+ * @version 1.0
+ */
+class Profiler {
+
+//#ifdef j2se
+    private static final com.sun.management.ThreadMXBean threadbean =
+	threadBean();
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+	try {
+	    Object bean = java.lang.management.ManagementFactory.getThreadMXBean();
+	    if (bean instanceof com.sun.management.ThreadMXBean) {
+		com.sun.management.ThreadMXBean tb =
+		    (com.sun.management.ThreadMXBean)bean;
+		if (tb.isThreadAllocatedMemorySupported()
+		    && tb.isThreadAllocatedMemoryEnabled()) {
+		    return tb;
+		}
+	    }
+	} catch (Throwable t) {
+	}
+	return null;
+    }
+//#endif
+
+    /* For each name: calls, inclusive and exclusive nanoseconds, and
+     * bytes allocated. */
+    private Hashtable stats = new Hashtable();
+
+    /* For each call in progress, innermost last: when it started,
+     * the bytes allocated by then, and the time spent in the calls it
+     * has made. */
+    private long[] start = new long[32];
+    private long[] startalloc = new long[32];
+    private long[] childtime = new long[32];
+    private int depth = 0;
+
+    /**
+     * <code>enter</code> is called as a command is called.
+     *
+     * @param name a <code>Thing</code> value - what it is called as.
+     * @param lineno an <code>int</code> value - the line it is called
+     * from.
+     */
+    void enter(Thing name, int lineno) {
+	if (depth == start.length) {
+	    start = grow(start);
+	    startalloc = grow(startalloc);
+	    childtime = grow(childtime);
+	}
+	childtime[depth] = 0;
+	startalloc[depth] = allocated();
+	start[depth] = now();
+	depth++;
+    }
+
+    /**
+     * <code>exit</code> is called as the command last entered
+     * returns, or throws.
+     *
+     * @param name a <code>Thing</code> value - what it was called as.
+     */
+    void exit(Thing name) {
+	long t = now();
+	long a = allocated();
+	if (depth == 0) {
+	    /* Entered before profiling was turned on. */
+	    return;
+	}
+	depth--;
+	long incl = t - start[depth];
+	if (depth > 0) {
+	    childtime[depth - 1] += incl;
+	}
+	String key = name.toString();
+	long[] s = (long[])stats.get(key);
+	if (s == null) {
+	    s = new long[4];
+	    stats.put(key, s);
+	}
+	s[0]++;
+	s[1] += incl;
+	s[2] += incl - childtime[depth];
+	/* The heap figure drops when the GC runs. */
+	if (a > startalloc[depth]) {
+	    s[3] += a - startalloc[depth];
+	}
+    }
+
+    /**
+     * <code>reset</code> forgets what has been counted so far.
+     */
+    void reset() {
+	stats.clear();
+    }
+
+    /**
+     * <code>results</code> returns a list with, for each name called,
+     * a list of the name, the number of calls, the inclusive and
+     * exclusive nanoseconds, and the bytes allocated, most exclusive
+     * time first.
+     *
+     * @return a <code>Thing</code> value
+     */
+    Thing results() {
+	Vector names = new Vector();
+	for (Enumeration e = stats.keys(); e.hasMoreElements();) {
+	    String name = (String)e.nextElement();
+	    long excl = ((long[])stats.get(name))[2];
+	    int i = names.size();
+	    while (i > 0 && ((long[])stats.get(names.elementAt(i - 1)))[2] < excl) {
+		i--;
+	    }
+	    names.insertElementAt(name, i);
+	}
+	Vector v = new Vector();
+	for (int i = 0; i < names.size(); i++) {
+	    String name = (String)names.elementAt(i);
+	    long[] s = (long[])stats.get(name);
+	    Vector entry = new Vector();
+	    entry.addElement(new Thing(name));
+	    for (int j = 0; j < s.length; j++) {
+		entry.addElement(LongThing.create(s[j]));
+	    }
+	    v.addElement(ListThing.create(entry));
+	}
+	return ListThing.create(v);
+    }
+
+    private static long now() {
+//#ifdef j2se
+	return System.nanoTime();
+//#else
+	return System.currentTimeMillis() * 1000000;
+//#endif
+    }
+
+    private static long allocated() {
+//#ifdef j2se
+	if (threadbean != null) {
+	    return threadbean.getThreadAllocatedBytes(
+		Thread.currentThread().getId());
+	}
+//#endif
+	Runtime rt = Runtime.getRuntime();
+	return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long[] grow(long[] a) {
+	long[] b = new long[a.length * 2];
+	System.arraycopy(a, 0, b, 0, a.length);
+	return b;
+    }
+}
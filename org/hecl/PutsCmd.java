@@ -5,16 +5,40 @@ import javax.microedition.lcdui.*;
 /**
  * <code>PutsCmd</code> implements the "puts" command.
  *
- * Outputs puts to a common form control.
+ * Outputs puts to the interp's OutputSink, a line at a time, if it
+ * has one; else to a common form control, or to standard output if
+ * there is no Display.
  */
 
 class PutsCmd extends IOCmd {
+    public Thing cmdCode(Interp interp, Thing[] argv) throws HeclException {
+        OutputSink sink = interp.sink;
+        if(sink != null || interp.output == null) {
+            String s = text(argv) + "\n";
+            if(sink != null)
+                sink.write(s);
+            else
+                System.out.print(s);
+            return null;
+        }
+        return super.cmdCode(interp, argv);
+    }
+
     Thing doCode(Interp interp, Thing[] argv, Displayable d) throws HeclException {
-        for(int i=1;i<argv.length;i++)
-            ((Form)d).append(argv[i].toString());
+        //one item per puts, not per argument
+        ((Form)d).append(text(argv));
 	return null;
     }
 
+    private static String text(Thing[] argv) {
+        if(argv.length == 2)
+            return argv[1].toString();
+        StringBuffer sb = new StringBuffer();
+        for(int i=1;i<argv.length;i++)
+            sb.append(argv[i].toString());
+        return sb.toString();
+    }
+
     Displayable make() {
         return new Form("Output");
     }
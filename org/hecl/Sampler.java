@@ -0,0 +1,160 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+/**
+ * <code>Sampler</code> is a sampling profiler.  Installed in place of
+ * a counting <code>Profiler</code>, by 'intro sample on', it only
+ * keeps track of the calls in progress - what each was called as,
+ * and from which line - and a thread of its own looks at them every
+ * few milliseconds, counting how often each stack of calls is seen.
+ * That costs far less than timing every call, so it can be left on
+ * for a long run.
+ *
+ * <p>The results come in the collapsed-stack format that flame graph
+ * tools read: one line per stack, outermost call first, with the
+ * calls separated by ';' and followed by the number of samples, as in
+ * <code>main:3;fib:1;fib:1 12</code>.
+ *
+ * <p>The sampling thread reads the stack without locking, so a
+ * sample taken as a call is made or returns can be slightly off.
+ *
+ * @version 1.0
+ */
+class Sampler extends Profiler implements Runnable {
+    /* The calls in progress, innermost last. */
+    private Thing[] names = new Thing[64];
+    private int[] lines = new int[64];
+    private volatile int depth = 0;
+
+    /* How many times each stack has been seen. */
+    private Hashtable samples = new Hashtable();
+
+    private int interval;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    /**
+     * Creates a new <code>Sampler</code> instance, and starts
+     * sampling.
+     *
+     * @param interval an <code>int</code> value - the milliseconds
+     * between samples.
+     */
+    Sampler(int interval) {
+	this.interval = interval;
+	thread = new Thread(this);
+	thread.start();
+    }
+
+    void enter(Thing name, int lineno) {
+	int d = depth;
+	if (d == names.length) {
+	    Thing[] n = new Thing[d * 2];
+	    int[] l = new int[d * 2];
+	    System.arraycopy(names, 0, n, 0, d);
+	    System.arraycopy(lines, 0, l, 0, d);
+	    names = n;
+	    lines = l;
+	}
+	names[d] = name;
+	lines[d] = lineno;
+	depth = d + 1;
+    }
+
+    void exit(Thing name) {
+	if (depth > 0) {
+	    depth--;
+	}
+    }
+
+    /**
+     * <code>stop</code> stops sampling.
+     */
+    void stop() {
+	running = false;
+	thread.interrupt();
+    }
+
+    void reset() {
+	synchronized (samples) {
+	    samples.clear();
+	}
+    }
+
+    /**
+     * <code>results</code> returns the samples taken so far, in the
+     * collapsed-stack format.
+     *
+     * @return a <code>Thing</code> value
+     */
+    Thing results() {
+	StringBuffer sb = new StringBuffer();
+	synchronized (samples) {
+	    for (Enumeration e = samples.keys(); e.hasMoreElements();) {
+		String stack = (String)e.nextElement();
+		sb.append(stack).append(' ')
+		    .append(((int[])samples.get(stack))[0]).append('\n');
+	    }
+	}
+	return new Thing(sb.toString());
+    }
+
+    public void run() {
+	StringBuffer sb = new StringBuffer();
+	while (running) {
+	    try {
+		Thread.sleep(interval);
+	    } catch (InterruptedException e) {
+		continue;
+	    }
+	    /* Read depth first: enter sets it last, so reading it
+	     * makes what enter wrote before it visible here. */
+	    int d = depth;
+	    Thing[] n = names;
+	    int[] l = lines;
+	    if (d > n.length) {
+		d = n.length;
+	    }
+	    if (d > l.length) {
+		d = l.length;
+	    }
+	    if (d == 0) {
+		/* Not running any code. */
+		continue;
+	    }
+	    sb.setLength(0);
+	    for (int i = 0; i < d; i++) {
+		if (i > 0) {
+		    sb.append(';');
+		}
+		Thing name = n[i];
+		sb.append(name != null ? name.toString() : "?")
+		    .append(':').append(l[i]);
+	    }
+	    String stack = sb.toString();
+	    synchronized (samples) {
+		int[] count = (int[])samples.get(stack);
+		if (count == null) {
+		    samples.put(stack, new int[] { 1 });
+		} else {
+		    count[0]++;
+		}
+	    }
+	}
+    }
+}
@@ -28,6 +28,11 @@ class SortCmd implements Command {
     private Interp localinterp = null;
 
     public Thing cmdCode(Interp interp, Thing[] argv) throws HeclException {
+	if (argv[1].getVal() instanceof PackedListThing) {
+	    PackedListThing packed = (PackedListThing)argv[1].getVal();
+	    packed.sort();
+	    return new Thing(packed);
+	}
         Vector v = ListThing.get(argv[1]);
 	localinterp = interp;
 
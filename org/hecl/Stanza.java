@@ -15,6 +15,9 @@
 
 package org.hecl;
 
+import java.util.Hashtable;
+import java.util.Vector;
+
 /**
  * The <code>Stanza</code> class represents one command. A CodeThing
  * object may have several Stanzas.
@@ -30,6 +33,36 @@ class Stanza {
     private Command command = null;
     private Thing[] argv = null;
 
+    /* If argv[0] is a plain literal word, this is its name, and
+     * 'binding' is what it last resolved to. */
+    private String cmdname = null;
+    private Binding binding = null;
+
+    /* A command, and the command table it was looked up in.  Interps
+     * on different threads may run the same stanza, so the two are
+     * replaced together rather than one at a time. */
+    private static final class Binding {
+	final Hashtable commands;
+	final Command command;
+
+	Binding(Hashtable commands, Command command) {
+	    this.commands = commands;
+	    this.command = command;
+	}
+    }
+
+    /* True if no argument needs substituting, in which case argv is
+     * passed to the command as it is. */
+    private boolean literal = false;
+
+    /* If this stanza only calls pure commands on literals, 'folded'
+     * is its result, worked out when it was parsed.  It holds for as
+     * long as 'foldcmd' is still what the name resolves to, which was
+     * last checked against the command table 'foldcommands'. */
+    private Thing folded = null;
+    private Command foldcmd = null;
+    private Hashtable foldcommands = null;
+
     /**
      * Creates a new <code>Stanza</code> instance, taking a Command and
      * its arguments as input.
@@ -41,6 +74,30 @@ class Stanza {
 	this.command = newcmd;
 	this.argv = newargv;
 	this.lineno = ln;
+	if (newcmd == null && newargv.length > 0 && newargv[0].isLiteral()) {
+	    RealThing rt = newargv[0].getVal();
+	    if (!(rt instanceof GroupThing || rt instanceof SubstThing
+		  || rt instanceof CodeThing)) {
+		this.cmdname = newargv[0].toString();
+	    }
+	}
+	if (newargv.length > 0) {
+	    this.literal = true;
+	    for (int i = 0; i < newargv.length; i++) {
+		RealThing rt = newargv[i].getVal();
+		if (rt instanceof GroupThing || rt instanceof SubstThing
+		    || rt instanceof CodeThing) {
+		    this.literal = false;
+		}
+	    }
+	    /* A literal command name is always passed as a copy;
+	     * cloneThing would otherwise set this every time. */
+	    RealThing rt = newargv[0].getVal();
+	    if (!(rt instanceof GroupThing || rt instanceof SubstThing
+		  || rt instanceof CodeThing)) {
+		newargv[0].copy = true;
+	    }
+	}
     }
 
 
@@ -56,7 +113,9 @@ class Stanza {
 	for (int i = 0; i < this.argv.length; i++) {
 	    destargv[i] = this.argv[i].deepcopy();
 	}
-	return new Stanza(this.command, destargv, this.lineno);
+	Stanza s = new Stanza(this.command, destargv, this.lineno);
+	s.cmdname = this.cmdname;
+	return s;
     }
 
     private static Thing cloneThing(Interp interp,Thing t) throws HeclException {
@@ -72,7 +131,6 @@ class Stanza {
 	    res = CodeThing.doCodeSubst(interp, t);
 	} else {
 	    res = t;
-	    res.copy = true;
 	}
 	//System.err.println("<--cloneThing, res="+res.toString());
 	return res;
@@ -80,8 +138,8 @@ class Stanza {
     
     /**
      * The <code>run</code> method runs the Stanza. In order to avoid
-     * creating a new newargv each time, the most common cases are
-     * preallocated.
+     * creating a new newargv each time, it is taken from the interp's
+     * pool, or is just argv if there's nothing to substitute.
      *
      * @param interp <code>Interp</code> value
      * @return A <code>Thing</code> being the result of the evaluation, or
@@ -91,22 +149,194 @@ class Stanza {
      */
     public Thing run(Interp interp) throws HeclException {
 	RealThing realthing = null;
-	Command tmpcommand = null;
-	ClassCommandInfo info = null;
-	
+
 	//System.err.println("-->Stanza.run, this="+this);
-	
-	Thing[] newargv = new Thing[this.argv.length];
 
-	/* If we have a CodeThing, GroupThing or SubstThing as
-	 * argv[0], we don't want to save 'command'. */
-	/* FIXME - this could get all messed up by renaming commands. */
-	boolean saveit = false;
+	Thing folded = this.folded;
+	if (folded != null) {
+	    if (foldValid(interp)) {
+		/* Hand out a copy, so that the result can't be
+		 * changed under us. */
+		return folded.deepcopy();
+	    }
+	    this.folded = null;
+	}
+
+	if (this.literal) {
+	    return invoke(interp, resolve(interp, this.argv[0]), this.argv);
+	}
+
+	Thing[] newargv = interp.takeArgv(this.argv.length);
+	try {
+	    newargv[0] = cloneThing(interp,this.argv[0]);
+	    Object cmd = resolve(interp, newargv[0]);
+
+	    /*
+	     * Fill in the elements of the new argv - doing substitutions and
+	     * running code where needs be.
+	     */
+	    try {
+		//for (int i = 0; i < argv.length; i++) {
+		for (int i = 1; i < argv.length; i++) {
+		    realthing = argv[i].getVal();
+		    if (realthing instanceof GroupThing) {
+			newargv[i] = CodeThing.doGroupSubst(interp, argv[i]);
+			newargv[i].copy = true;
+		    } else if (realthing instanceof SubstThing) {
+			newargv[i] = CodeThing.doSubstSubst(interp, argv[i]);
+		    } else if (realthing instanceof CodeThing) {
+			newargv[i] = CodeThing.doCodeSubst(interp, argv[i]);
+		    } else {
+			newargv[i] = argv[i];
+		    }
+		}
+	    } catch (HeclException he) {
+		he.setLine(this.lineno);
+		throw he;
+	    }
 
+	    return invoke(interp, cmd, newargv);
+	} finally {
+	    interp.releaseArgv(newargv);
+	}
+    }
+
+    /**
+     * <code>fold</code> works out the result of this stanza ahead of
+     * time if it only calls pure commands on literals, or on the
+     * results of bracketed stanzas which can themselves be folded.
+     * Bracketed stanzas in its arguments are folded whether or not
+     * this one can be.
+     *
+     * @param interp an <code>Interp</code> value
+     * @return a <code>boolean</code> value - true if the stanza was
+     * folded.
+     */
+    boolean fold(Interp interp) {
+	boolean pure = this.cmdname != null;
+	for (int i = 1; i < argv.length; i++) {
+	    RealThing rt = argv[i].getVal();
+	    if (rt instanceof CodeThing) {
+		CodeThing ct = (CodeThing)rt;
+		if (!ct.marksubst || !ct.fold(interp)) {
+		    pure = false;
+		}
+	    } else if (rt instanceof GroupThing || rt instanceof SubstThing) {
+		pure = false;
+	    }
+	}
+	if (!pure) {
+	    return false;
+	}
+	Command cmd = lookup(interp);
+	if (!(cmd instanceof Operator) || !((Operator)cmd).isPure()) {
+	    return false;
+	}
+	Thing res;
+	try {
+	    res = run(interp);
+	} catch (Exception e) {
+	    /* Leave it to fail when it is run. */
+	    return false;
+	}
+	if (res == null) {
+	    return false;
+	}
+	RealThing rt = res.getVal();
+	if (rt instanceof ListThing || rt instanceof HashThing) {
+	    /* Their elements may be this stanza's literals, which a
+	     * copy would hand out as ordinary Things that can be
+	     * changed.  Build them each time, as unfolded code does. */
+	    return false;
+	}
+	this.foldcmd = cmd;
+	this.foldcommands = interp.commands;
+	this.folded = res;
+	return true;
+    }
+
+    /**
+     * <code>foldValid</code> returns true if <code>folded</code> is
+     * still the result of this stanza in <code>interp</code>, which
+     * it isn't once any command it depends on has been redefined.
+     */
+    private boolean foldValid(Interp interp) {
+	Hashtable commands = interp.commands;
+	if (this.foldcommands == commands) {
+	    return true;
+	}
+	if (lookup(interp) != this.foldcmd) {
+	    return false;
+	}
+	for (int i = 1; i < argv.length; i++) {
+	    RealThing rt = argv[i].getVal();
+	    if (rt instanceof CodeThing) {
+		Stanza s = (Stanza)((CodeThing)rt).getStanzas().elementAt(0);
+		if (s.folded == null || !s.foldValid(interp)) {
+		    return false;
+		}
+	    }
+	}
+	this.foldcommands = commands;
+	return true;
+    }
+
+    /**
+     * <code>isFolded</code> returns true if the stanza's result was
+     * worked out when it was parsed.
+     *
+     * @return a <code>boolean</code> value
+     */
+    boolean isFolded() {
+	return this.folded != null;
+    }
+
+    /**
+     * <code>lookup</code> returns the command a literal command name
+     * currently refers to, or <code>null</code> if there is no such
+     * command or the name isn't a literal.
+     *
+     * @param interp an <code>Interp</code> value
+     * @return a <code>Command</code> value
+     */
+    Command lookup(Interp interp) {
+	if (this.cmdname == null) {
+	    return null;
+	}
+	/* Only go to the command table when it has changed since we
+	 * last looked. */
+	Hashtable commands = interp.commands;
+	Binding b = this.binding;
+	if (b == null || b.commands != commands) {
+	    b = new Binding(commands, (Command)commands.get(this.cmdname));
+	    this.binding = b;
+	}
+	return b.command;
+    }
+
+    /**
+     * <code>resolve</code> works out what to call for this stanza,
+     * given its substituted argv[0].
+     *
+     * @param interp an <code>Interp</code> value
+     * @param cmdthing the substituted argv[0]
+     * @return the <code>Command</code>, or the
+     * <code>ClassCommandInfo</code> if cmdthing is an object with a
+     * class command.
+     * @exception HeclException if there is no such command
+     */
+    Object resolve(Interp interp, Thing cmdthing) throws HeclException {
+	Command tmpcommand = null;
+	ClassCommandInfo info = null;
 	String cmdName = null;
-	newargv[0] = cloneThing(interp,this.argv[0]);
-	if (this.command == null) {
-	    realthing = newargv[0].getVal();
+
+	if (this.cmdname != null) {
+	    cmdName = this.cmdname;
+	    tmpcommand = lookup(interp);
+	} else if (this.command == null) {
+	    /* If we have a CodeThing, GroupThing or SubstThing as
+	     * argv[0], the command has to be looked up every time. */
+	    RealThing realthing = cmdthing.getVal();
 	    if(realthing instanceof ObjectThing) {
 		info = interp.findClassCmd(((ObjectThing)realthing).get().getClass());
 		if(info != null && argv.length < 1) {
@@ -114,14 +344,13 @@ class Stanza {
 		}
 	    }
 	    if(info == null)
-		cmdName = newargv[0].toString();
+		cmdName = cmdthing.toString();
 	    if(cmdName != null) {
 		//System.out.println("cmdname = " + cmdName);
 		tmpcommand = (Command)interp.commands.get(cmdName);
 	    }
 	} else {
-	    /* FIXME - this could get all messed up by renaming commands. */
-	    cmdName = newargv[0].toString();
+	    cmdName = cmdthing.toString();
 	    tmpcommand = this.command;
 	}
 
@@ -129,37 +358,32 @@ class Stanza {
 	    throw new HeclException("Command '" + cmdName + "' does not exist",
 				    this.lineno);
 	}
+	return info != null ? (Object)info : tmpcommand;
+    }
 
-	/*
-	 * Fill in the elements of the new argv - doing substitutions and
-	 * running code where needs be.
-	 */
-	try {
-	    //for (int i = 0; i < argv.length; i++) {
-	    for (int i = 1; i < argv.length; i++) {
-		realthing = argv[i].getVal();
-		if (realthing instanceof GroupThing) {
-		    newargv[i] = CodeThing.doGroupSubst(interp, argv[i]);
-		    newargv[i].copy = true;
-		} else if (realthing instanceof SubstThing) {
-		    newargv[i] = CodeThing.doSubstSubst(interp, argv[i]);
-		} else if (realthing instanceof CodeThing) {
-		    newargv[i] = CodeThing.doCodeSubst(interp, argv[i]);
-		} else {
-		    newargv[i] = argv[i];
-		}
-	    }
-	} catch (HeclException he) {
-	    he.setLine(this.lineno);
-	    throw he;
-	}
-
+    /**
+     * <code>invoke</code> calls what <code>resolve</code> returned
+     * with the substituted arguments.
+     *
+     * @param interp an <code>Interp</code> value
+     * @param cmd a <code>Command</code> or <code>ClassCommandInfo</code>
+     * @param newargv the substituted arguments
+     * @return a <code>Thing</code> value, never <code>null</code>
+     * @exception HeclException if an error occurs
+     */
+    Thing invoke(Interp interp, Object cmd, Thing[] newargv)
+	throws HeclException {
 	Thing res = null;
+	Profiler prof = interp.profiler;
+	if (prof != null) {
+	    prof.enter(newargv[0], this.lineno);
+	}
 	try {
-	    if(info != null) {
+	    if(cmd instanceof ClassCommandInfo) {
+		ClassCommandInfo info = (ClassCommandInfo)cmd;
 		res = info.getCommand().method(interp,info,newargv);
 	    } else {
-		res = tmpcommand.cmdCode(interp, newargv);
+		res = ((Command)cmd).cmdCode(interp, newargv);
 	    }
 	} catch (HeclException e) {
 	    /* Uh oh, an "issue"! */
@@ -169,29 +393,88 @@ class Stanza {
 	    }
 	    throw e;
 	} catch (Exception e) {
-	    String msg;
-	    /*
-	     * Transform a Java exception into a form more palatable to
-	     * Hecl.
-	     */
-	    msg = e.getMessage();
-	    if (msg == null) {
-		msg = "(null exception of type " + e.getClass() + ")";
-	    } else {
-		msg = "Exception of type " + e.getClass() + ": " + msg;
-	    }
-	    throw new HeclException(msg,this.lineno);
+	    throw javaException(e, this.lineno);
 	} finally {
-	    newargv = null;
+	    if (prof != null) {
+		prof.exit(newargv[0]);
+	    }
 	}
 
-	/* Go ahead and save the command. */
-	if (saveit) {
-	    command = tmpcommand;
-	}
 	return res != null ? res : Thing.emptyThing();
     }
 
+    /**
+     * <code>javaException</code> transforms a Java exception into a
+     * form more palatable to Hecl.
+     *
+     * @param e an <code>Exception</code> value
+     * @param lineno an <code>int</code> value
+     * @return a <code>HeclException</code> value
+     */
+    static HeclException javaException(Exception e, int lineno) {
+	String msg = e.getMessage();
+	if (msg == null) {
+	    msg = "(null exception of type " + e.getClass() + ")";
+	} else {
+	    msg = "Exception of type " + e.getClass() + ": " + msg;
+	}
+	return new HeclException(msg,lineno);
+    }
+
+    /**
+     * <code>varNames</code> adds to <code>names</code> the variables
+     * this stanza can be seen to use: $substitutions, the names given
+     * to set and foreach, and those found in literal blocks that will
+     * probably be run as code.
+     *
+     * @param interp an <code>Interp</code> value
+     * @param names a <code>Vector</code> of <code>String</code>s
+     */
+    void varNames(Interp interp, Vector names) {
+	for (int i = 0; i < argv.length; i++) {
+	    varNames(interp, argv[i], names);
+	}
+	if (cmdname != null && argv.length > 1
+	    && argv[1].getVal() instanceof StringThing) {
+	    if (cmdname.equals("set")) {
+		names.addElement(argv[1].toString());
+	    } else if (cmdname.equals("foreach")) {
+		try {
+		    Vector v = new ListThing(argv[1].toString()).val;
+		    for (int i = 0; i < v.size(); i++) {
+			names.addElement(v.elementAt(i).toString());
+		    }
+		} catch (HeclException e) {
+		    /* Not a list - foreach will complain at run time. */
+		}
+	    }
+	}
+    }
+
+    private static void varNames(Interp interp, Thing t, Vector names) {
+	RealThing rt = t.getVal();
+	if (rt instanceof SubstThing) {
+	    names.addElement(((SubstThing)rt).getVarName());
+	} else if (rt instanceof GroupThing) {
+	    Vector v = ((GroupThing)rt).val;
+	    for (int i = 0; i < v.size(); i++) {
+		varNames(interp, (Thing)v.elementAt(i), names);
+	    }
+	} else if (rt instanceof CodeThing) {
+	    ((CodeThing)rt).varNames(interp, names);
+	} else if (rt instanceof StringThing) {
+	    String s = t.toString();
+	    if (s.indexOf(' ') >= 0 || s.indexOf('\n') >= 0
+		|| s.indexOf('$') >= 0) {
+		try {
+		    new Parse(interp, s).parseToCode().varNames(interp, names);
+		} catch (Exception e) {
+		    /* Not code, then. */
+		}
+	    }
+	}
+    }
+
     /**
      * The <code>toString</code> method turns a Stanza into a string.
      *
@@ -220,4 +503,16 @@ class Stanza {
     public Thing[] getArgv() {
 	return argv;
     }
+
+    boolean isLiteral() {
+	return literal;
+    }
+
+    int getLineno() {
+	return lineno;
+    }
+
+    String getCmdName() {
+	return cmdname;
+    }
 }
@@ -58,7 +58,8 @@ class StringCmds extends Operator {
 
 
     public Thing operate(int cmd, Interp interp, Thing[] argv) throws HeclException {
-	String str = argv[1].toString();
+	/* 'append' doesn't need the string, and it may be long. */
+	String str = cmd != APPEND ? argv[1].toString() : null;
 	StringBuffer sb = null;
 	String s = null;
 	String where = null;
@@ -68,13 +69,19 @@ class StringCmds extends Operator {
 		/* The 'append' command. */
 		Thing result = argv[1];
 
-		sb = new StringBuffer(StringThing.get(result));
+		/* Append in place, unless the variable is not to be
+		 * changed, and return a copy, so that later appends
+		 * don't change what was returned.  Neither copy is of
+		 * the characters, so a string built up with 'append'
+		 * isn't copied each time. */
+		StringThing newval = StringThing.getStringThing(result);
+		if (result.copy || result.literal) {
+		    newval = (StringThing)newval.deepcopy();
+		}
 		for (int i = 2; i < argv.length; i++) {
-		    sb.append(argv[i].toString());
+		    newval.append(argv[i].toString());
 		}
-		StringThing newval = new StringThing(sb);
-		result.setCopyVal(newval);
-		return new Thing(newval);
+		return new Thing(newval.deepcopy());
 
 	    case EQ:
 	      /* 'eq' */
@@ -149,7 +156,7 @@ class StringCmds extends Operator {
 	      String lookin = argv[2].toString();
 	      Vector splitstrings = defsplitstrings;
 	      if(argv.length == 4) {
-	      splitstrings = ListThing.get(argv[3]);
+	      splitstrings = ListThing.getReadOnly(argv[3]);
 	      }
 	      Vector r = new Vector();
 	      int n = splitstrings.size();
@@ -186,7 +193,7 @@ class StringCmds extends Operator {
 		Vector trimstrings = null;
 
 		if (argv.length == 3 ) {
-		    trimstrings = ListThing.get(argv[2]);
+		    trimstrings = ListThing.getReadOnly(argv[2]);
 		} else {
 		    /* We just use the native method. */
 		    return new Thing(str.trim());
@@ -202,7 +209,7 @@ class StringCmds extends Operator {
 		Vector trimstrings = null;
 
 		if (argv.length == 3 ) {
-		    trimstrings = ListThing.get(argv[2]);
+		    trimstrings = ListThing.getReadOnly(argv[2]);
 		} else {
 		    trimstrings = defsplitstrings;
 		}
@@ -216,7 +223,7 @@ class StringCmds extends Operator {
 		Vector trimstrings = null;
 
 		if (argv.length == 3 ) {
-		    trimstrings = ListThing.get(argv[2]);
+		    trimstrings = ListThing.getReadOnly(argv[2]);
 		} else {
 		    trimstrings = defsplitstrings;
 		}
@@ -228,7 +235,7 @@ class StringCmds extends Operator {
 	    case STRREPLACE: {
 		// strreplace {from to} stringwithfromtoreplace
 		String resstr = "";
-		Vector v = ListThing.get(argv[1]);
+		Vector v = ListThing.getReadOnly(argv[1]);
 		String original = argv[2].toString();
 		String from = ((Thing)v.elementAt(0)).toString();
 		String to = ((Thing)v.elementAt(1)).toString();
@@ -260,6 +267,10 @@ class StringCmds extends Operator {
 	Operator.unload(ip,cmdtable);
     }
 
+    boolean isPure() {
+	return cmdcode != APPEND;
+    }
+
     protected StringCmds(int cmdcode, int minargs, int maxargs) {
 	super(cmdcode, minargs, maxargs);
     }
@@ -24,7 +24,21 @@ package org.hecl;
  * @version 1.0
  */
 public class StringThing implements RealThing {
+    /* The string is the first len characters of val.  Copies share
+     * val, each with its own len, and only ever add to the end of it,
+     * so what is before a StringThing's len never changes: the one
+     * whose len is the end of val can append to it in place, and the
+     * others copy their part of it first. */
     private StringBuffer val;
+    private int len;
+
+    /* The string, once it has been asked for, until it changes. */
+    private String str = null;
+
+    /* Set once val may be shared with a copy.  Until then nothing
+     * else can add to val, so appending needs neither the lock nor
+     * own(): the parser builds every word a character at a time. */
+    private boolean shared = false;
 
     /**
      * Creates a new, empty <code>StringThing</code> instance.
@@ -42,6 +56,8 @@ public class StringThing implements RealThing {
      */
     public StringThing(String s) {
         val = s != null ? new StringBuffer(s) : new StringBuffer();
+	len = val.length();
+	str = s;
     }
 
     /**
@@ -52,6 +68,13 @@ public class StringThing implements RealThing {
      */
     public StringThing(StringBuffer sb) {
         val = sb;
+	len = sb.length();
+    }
+
+    private StringThing(StringBuffer sb, int len, String str) {
+	val = sb;
+	this.len = len;
+	this.str = str;
     }
 
     public String thingclass() {
@@ -99,12 +122,32 @@ public class StringThing implements RealThing {
     }
 
     /**
-     * <code>deepcopy</code> copies the string.
+     * <code>getStringThing</code> transforms the Thing into a string
+     * type, and returns its value, without making a
+     * <code>String</code> of it.
+     *
+     * @param thing a <code>Thing</code> value
+     * @return a <code>StringThing</code> value
+     */
+    static StringThing getStringThing(Thing thing) {
+        setStringFromAny(thing);
+	return (StringThing)thing.getVal();
+    }
+
+    /**
+     * <code>deepcopy</code> copies the string.  The copy shares the
+     * characters with this one, so it costs nothing however long the
+     * string is.
      *
      * @return a <code>RealThing</code> value
      */
     public RealThing deepcopy() {
-        return new StringThing(new StringBuffer(val.toString()));
+	StringThing copy = new StringThing(val, len, str);
+	synchronized (val) {
+	    shared = true;
+	    copy.shared = true;
+	}
+	return copy;
     }
 
     /**
@@ -113,7 +156,29 @@ public class StringThing implements RealThing {
      * @return a <code>String</code> value
      */
     public String getStringRep() {
-        return val.toString();
+	String s = str;
+	if (s == null) {
+	    synchronized (val) {
+		if (len == val.length()) {
+		    s = val.toString();
+		} else {
+		    char[] chars = new char[len];
+		    val.getChars(0, len, chars, 0);
+		    s = new String(chars);
+		}
+	    }
+	    str = s;
+	}
+        return s;
+    }
+
+    /**
+     * <code>length</code> returns the length of the string.
+     *
+     * @return an <code>int</code> value
+     */
+    public int length() {
+	return len;
     }
 
     /**
@@ -123,7 +188,17 @@ public class StringThing implements RealThing {
      *            a <code>char</code> value
      */
     public void append(char ch) {
-        val.append(ch);
+	if (shared) {
+	    synchronized (val) {
+		own();
+		val.append(ch);
+		len = val.length();
+	    }
+	} else {
+	    val.append(ch);
+	    len++;
+	}
+	str = null;
     }
 
     /**
@@ -133,6 +208,27 @@ public class StringThing implements RealThing {
      *            a <code>String</code> value
      */
     public void append(String str) {
-        val.append(str);
+	if (shared) {
+	    synchronized (val) {
+		own();
+		val.append(str);
+		len = val.length();
+	    }
+	} else {
+	    val.append(str);
+	    len = val.length();
+	}
+	this.str = null;
+    }
+
+    /* Copies this string's part of val if a copy has added to it
+     * since.  The new val is this string's alone. */
+    private void own() {
+	if (len != val.length()) {
+	    char[] chars = new char[len];
+	    val.getChars(0, len, chars, 0);
+	    val = new StringBuffer(len + 16).append(chars);
+	    shared = false;
+	}
     }
 }
@@ -17,6 +17,8 @@
 
 package org.hecl;
 
+import java.util.Hashtable;
+
 /**
  * The <code>SubstThing</code> class represents things that must be
  * substituted - $foo or &foo for example.
@@ -25,12 +27,30 @@ package org.hecl;
  * @version 1.0
  */
 public class SubstThing implements RealThing {
-    public long cacheversion = -1;
-
-    private Thing val = null;
-
     private String varName = null;
 
+    /* The slot the variable was last looked up in.  The slot and the
+     * frame layout it belongs to are kept in one object, so that
+     * interps on other threads running the same code can't pair one
+     * layout with another's slot. */
+    private Slot slot = null;
+
+    /* The cell the variable was last found in, in a frame without
+     * slots; each cell knows its frame.  The global frame's cell is
+     * kept apart, for variables reached through 'global'. */
+    private Frame.Cell cell = null;
+    private Frame.Cell globalcell = null;
+
+    private static final class Slot {
+	final Hashtable slotindex;
+	final int slot;
+
+	Slot(Hashtable slotindex, int slot) {
+	    this.slotindex = slotindex;
+	    this.slot = slot;
+	}
+    }
+
     public SubstThing() {
     }
 
@@ -48,6 +68,16 @@ public class SubstThing implements RealThing {
 	return "subst";
     }
 
+    /**
+     * <code>getVarName</code> returns the name of the variable
+     * referenced.
+     *
+     * @return a <code>String</code> value
+     */
+    String getVarName() {
+	return varName;
+    }
+
     /**
      * <code>setSubstFromAny</code> creates a Subst object from another type.
      *
@@ -68,8 +98,9 @@ public class SubstThing implements RealThing {
 
     /**
      * <code>get</code> returns the *value* of a SubstThing - in other words,
-     * the Thing that its varName is pointing to. We use a cacheing mechanism
-     * devised by Salvatore Sanfilippo to avoid unnecessary lookups.
+     * the Thing that its varName is pointing to.  The slot or cell the
+     * variable lives in is remembered, so that it can be read
+     * directly next time.
      *
      * @param interp an <code>Interp</code> value
      * @param thing a <code>Thing</code> value
@@ -79,26 +110,58 @@ public class SubstThing implements RealThing {
     public static Thing get(Interp interp, Thing thing) throws HeclException {
         setSubstFromAny(interp, thing);
         SubstThing getcopy = (SubstThing)thing.getVal();
+	Thing res = null;
+
+	Frame frame = interp.frame;
+	if (frame.slotindex != null) {
+	    /* Variables that live in a slot of the current frame can
+	     * be read straight out of it. */
+	    Slot slot = getcopy.slot;
+	    if (slot == null || slot.slotindex != frame.slotindex) {
+		slot = new Slot(frame.slotindex,
+				frame.slotOf(getcopy.varName));
+		getcopy.slot = slot;
+	    }
+	    if (slot.slot >= 0) {
+		res = frame.slots[slot.slot];
+	    }
+	} else {
+	    Frame.Cell cell = getcopy.cell;
+	    if (cell == null || cell.frame != frame) {
+		cell = frame.cell(getcopy.varName);
+		getcopy.cell = cell;
+	    }
+	    if (cell != null) {
+		res = cell.value;
+	    }
+	}
 
+	if (res == Interp.GLOBALREFTHING) {
+	    frame = interp.globalFrame();
+	    Frame.Cell cell = getcopy.globalcell;
+	    if (cell == null || cell.frame != frame) {
+		cell = frame.cell(getcopy.varName);
+		getcopy.globalcell = cell;
+	    }
+	    res = cell != null ? cell.value : null;
+	}
 
-        if (getcopy.cacheversion != interp.cacheversion) {
-            getcopy.cacheversion = interp.cacheversion;
-            getcopy.val = interp.getVar(getcopy.varName);
-        } /* else {
-	    System.out.println("CACHE HIT");
-	}  */
+	if (res == null) {
+	    /* Let getVar sort out anything else, or complain. */
+	    res = interp.getVar(getcopy.varName);
+	}
 
-	if (getcopy.val.copy) {
+	if (res.copy) {
 	    /* If the Thing value of the substthing is something
 	     * that should be copied, we copy it so that we don't
 	     * mess up the original.  See the set-3 test, for
 	     * example. */
-	    Thing copy = getcopy.val.deepcopy();
+	    Thing copy = res.deepcopy();
 	    copy.copy = false;
 	    interp.setVar(getcopy.varName, copy);
 	    return copy;
 	}
-	return getcopy.val;
+	return res;
     }
 
     /**
@@ -183,15 +183,22 @@ public class Thing extends Object {
      * @throws HeclException
      */
     public Thing deepcopy() throws HeclException {
-	depth ++;
+	int d = ++depth;
         /* If we have too deep a nesting, kill it. */
-	if (depth > NESTDEPTH ) {
+	if (d > NESTDEPTH ) {
+	    depth = d - 1;
 	    throw new
 		HeclException("reference hard limit - circular reference?");
 	}
-	RealThing realthing = val.deepcopy();
-	/* We've done the deepcopy, we can lower the depth again. */
-	depth --;
+	RealThing realthing;
+	try {
+	    realthing = val.deepcopy();
+	} finally {
+	    /* We've done the deepcopy, we can lower the depth again.
+	     * It is set rather than decremented, so that threads
+	     * copying the same Thing at once can't leave it off. */
+	    depth = d - 1;
+	}
   	//Thing retval = new Thing(realthing);
 	//retval.copy = this.copy;
 	//retval.global = global;
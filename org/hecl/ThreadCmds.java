@@ -0,0 +1,182 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.util.Hashtable;
+
+/**
+ * The <code>ThreadCmds</code> class implements the 'thread' and
+ * 'chan' commands, which let a script run code on other threads and
+ * pass values between them.
+ *
+ * <p><code>thread spawn code</code> runs code in a new interp, forked
+ * from the calling one, on a thread of its own, and returns the
+ * thread; <code>thread join thread</code> waits for it and returns
+ * the result of its code, or throws its error.
+ *
+ * <p><code>chan create ?capacity?</code> makes a channel, and
+ * <code>chan send</code>, <code>recv</code>, <code>close</code> and
+ * <code>size</code> use it.  Values sent are copied, except for
+ * numbers and objects, which can't be changed in place and are
+ * handed over as they are.
+ *
+ * @version 1.0
+ */
+class ThreadCmds extends Operator {
+    public static final int THREAD = 1;
+    public static final int CHAN = 2;
+
+    /* The capacity of a channel made without one. */
+    static final int CHANCAPACITY = 16;
+
+    public Thing operate(int cmd, Interp interp, Thing[] argv) throws HeclException {
+	String subcmd = argv[1].toString();
+
+	switch (cmd) {
+	  case THREAD:
+	    if (subcmd.equals("spawn") && argv.length == 3) {
+		/* Parse it here, so that the new interp shares it. */
+		CodeThing.get(interp, argv[2]);
+		ScriptThread t = new ScriptThread(interp.fork(1)[0], argv[2]);
+		t.thread.start();
+		return ObjectThing.create(t);
+	    } else if (subcmd.equals("join") && argv.length == 3) {
+		return scriptThread(argv[2]).join();
+	    }
+	    throw HeclException.createWrongNumArgsException(
+		argv, 1, "spawn code | join thread");
+
+	  case CHAN:
+	    if (subcmd.equals("create") && argv.length <= 3) {
+		int capacity = argv.length == 3
+		    ? IntThing.get(argv[2]) : CHANCAPACITY;
+		if (capacity < 1) {
+		    throw new HeclException("channel capacity must be at least 1");
+		}
+		return ObjectThing.create(new Channel(capacity));
+	    } else if (subcmd.equals("send") && argv.length == 4) {
+		channel(argv[2]).send(transfer(argv[3]));
+		return argv[3];
+	    } else if (subcmd.equals("recv") && argv.length == 3) {
+		return channel(argv[2]).recv();
+	    } else if (subcmd.equals("close") && argv.length == 3) {
+		channel(argv[2]).close();
+		return null;
+	    } else if (subcmd.equals("size") && argv.length == 3) {
+		return IntThing.create(channel(argv[2]).size());
+	    }
+	    throw HeclException.createWrongNumArgsException(
+		argv, 1, "create ?capacity? | send chan value | recv chan | close chan | size chan");
+
+	  default:
+	    throw new HeclException("Unknown thread command '"
+				    + argv[0].toString() + "' with code '"
+				    + cmd + "'.");
+	}
+    }
+
+    /**
+     * <code>transfer</code> returns what to hand over to another
+     * thread for <code>value</code>.
+     */
+    private static Thing transfer(Thing value) throws HeclException {
+	RealThing rt = value.getVal();
+	if (rt instanceof NumberThing || rt instanceof ObjectThing) {
+	    return new Thing(rt);
+	}
+	return value.deepcopy();
+    }
+
+    private static Channel channel(Thing thing) throws HeclException {
+	Object o = ObjectThing.get(thing);
+	if (!(o instanceof Channel)) {
+	    throw new HeclException(thing.toString() + " is not a channel");
+	}
+	return (Channel)o;
+    }
+
+    private static ScriptThread scriptThread(Thing thing) throws HeclException {
+	Object o = ObjectThing.get(thing);
+	if (!(o instanceof ScriptThread)) {
+	    throw new HeclException(thing.toString() + " is not a thread");
+	}
+	return (ScriptThread)o;
+    }
+
+    /**
+     * A <code>ScriptThread</code> runs some code in an interp of its
+     * own.
+     */
+    private static class ScriptThread implements Runnable {
+	final Thread thread;
+	private Interp interp;
+	private Thing code;
+	private Thing result = null;
+	private HeclException error = null;
+
+	ScriptThread(Interp interp, Thing code) {
+	    this.interp = interp;
+	    this.code = code;
+	    this.thread = new Thread(this);
+	}
+
+	public void run() {
+	    try {
+		result = interp.eval(code);
+	    } catch (HeclException e) {
+		error = e;
+	    } catch (RuntimeException e) {
+		error = Stanza.javaException(e, 0);
+	    }
+	    interp = null;
+	}
+
+	Thing join() throws HeclException {
+	    try {
+		thread.join();
+	    } catch (InterruptedException e) {
+		throw new HeclException("interrupted");
+	    }
+	    if (error != null) {
+		throw error;
+	    }
+	    return result;
+	}
+
+	public String toString() {
+	    return "thread" + Integer.toHexString(hashCode());
+	}
+    }
+
+    public static void load(Interp ip) throws HeclException {
+	Operator.load(ip,cmdtable);
+    }
+
+
+    public static void unload(Interp ip) throws HeclException {
+	Operator.unload(ip,cmdtable);
+    }
+
+
+    private ThreadCmds(int cmdcode,int minargs,int maxargs) {
+	super(cmdcode,minargs,maxargs);
+    }
+
+    private static Hashtable cmdtable = new Hashtable();
+
+    static {
+	cmdtable.put("thread", new ThreadCmds(THREAD, 1, 2));
+	cmdtable.put("chan", new ThreadCmds(CHAN, 1, 3));
+    }
+}
@@ -0,0 +1,129 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.hecl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * <code>WriterSink</code> is an <code>OutputSink</code> that writes to
+ * a <code>Writer</code>, in batches: output is kept until there are
+ * <code>size</code> characters of it, or until it is
+ * <code>delay</code> milliseconds old, whichever comes first.
+ * <code>close</code> writes what is left.  If writing old output
+ * fails, the error is thrown by the next <code>write</code>,
+ * <code>flush</code> or <code>close</code>.
+ *
+ * @version 1.0
+ */
+public class WriterSink implements OutputSink {
+    private Writer out;
+    private int size;
+    private long delay;
+    private StringBuffer buffer = new StringBuffer();
+
+    private Timer timer = null;
+    private TimerTask pending = null;
+
+    /* The error from a write made by the timer, until it is thrown. */
+    private HeclException failed = null;
+
+    /**
+     * Creates a new <code>WriterSink</code> instance.
+     *
+     * @param out a <code>Writer</code> value
+     * @param size an <code>int</code> value - the characters kept
+     * before they are written.
+     * @param delay a <code>long</code> value - the most milliseconds
+     * output is kept, or 0 to keep it until there is
+     * <code>size</code> of it.
+     */
+    public WriterSink(Writer out, int size, long delay) {
+	this.out = out;
+	this.size = size;
+	this.delay = delay;
+    }
+
+    public synchronized void write(String s) throws HeclException {
+	check();
+	buffer.append(s);
+	if (buffer.length() >= size) {
+	    flush();
+	} else if (delay > 0 && pending == null) {
+	    if (timer == null) {
+//#ifdef j2se
+		timer = new Timer(true);
+//#else
+		timer = new Timer();
+//#endif
+	    }
+	    pending = new TimerTask() {
+		public void run() {
+		    try {
+			flush();
+		    } catch (HeclException e) {
+			synchronized (WriterSink.this) {
+			    failed = e;
+			}
+		    }
+		}
+	    };
+	    timer.schedule(pending, delay);
+	}
+    }
+
+    public synchronized void flush() throws HeclException {
+	if (pending != null) {
+	    pending.cancel();
+	    pending = null;
+	}
+	check();
+	try {
+	    if (buffer.length() > 0) {
+		out.write(buffer.toString());
+		buffer.setLength(0);
+	    }
+	    out.flush();
+	} catch (IOException e) {
+	    throw new HeclException("error writing output: " + e.toString());
+	}
+    }
+
+    /* Throws the error from a write made by the timer, if there was
+     * one, so that it is seen by whoever writes or flushes next.
+     * What the timer failed to write is kept, to be tried again. */
+    private void check() throws HeclException {
+	if (failed != null) {
+	    HeclException e = failed;
+	    failed = null;
+	    throw e;
+	}
+    }
+
+    /**
+     * <code>close</code> writes what is left, and stops the timer.
+     * The <code>Writer</code> is flushed but not closed.
+     *
+     * @exception HeclException if an error occurs
+     */
+    public synchronized void close() throws HeclException {
+	flush();
+	if (timer != null) {
+	    timer.cancel();
+	    timer = null;
+	}
+    }
+}
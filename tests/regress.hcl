@@ -0,0 +1,96 @@
+# Regression checks for the interpreter.  Run with
+#
+#   java Hecl tests/regress.hcl
+#
+# which exits with status 1, printing the failed check, if one fails.
+
+proc check {name got want} {
+    if {ne $got $want} {
+	throw "check $name failed, got '$got', wanted '$want'"
+    }
+}
+
+# A list of literals made by folded code is still made of literals:
+# changing an element taken from it doesn't change the list.
+proc foldlist {} {
+    set l [list a 5]
+    set e [lindex $l 1]
+    incr $e
+    set f [lindex $l 0]
+    append $f ZZ
+    return $l
+}
+check fold-list-1 [foldlist] {a 5}
+check fold-list-2 [foldlist] {a 5}
+check fold-list-3 [foldlist] {a 5}
+
+# A copy doesn't share elements that something else may change.
+set l [list a 5]
+set e [lindex $l 1]
+set c [copy $l]
+incr $e
+check copy-element [list $l $c] {{a 5} {a 5}}
+
+set i 0
+set r {x}
+lappend $r $i
+set c [copy $r]
+incr $i
+check copy-variable $c {x 0}
+
+# Copies of a list of literals share them until one is changed.
+set l [list a b c]
+set c [copy $l]
+lset $c 0 z
+lappend $l d
+check copy-literals [list $l $c] {{a b c d} {z b c}}
+
+# Whether a list holds a variable's Thing, and so changes with it,
+# doesn't depend on the list being all numbers.
+set a 1
+set l [list $a 2]
+incr $a
+check list-variable $l {2 2}
+
+set r {}
+for {set i 1} {< $i 9} {incr $i 2} {lappend $r $i}
+check lappend-variable $r {9 9 9 9}
+
+set l [list 1 2 3]
+set e [lindex $l 0]
+incr $e
+check packed-literal $l {1 2 3}
+
+# Code is never changed by running it, so code that is run again, or
+# shared through the code cache, gives the same result each time.
+set r {}
+for {set i 0} {< $i 3} {incr $i} {lappend $r [eval "lappend {a b} x"]}
+check literal-lappend $r {{a b x} {a b x} {a b x}}
+
+# Strings that share their characters with a copy still change alone.
+set s ab
+set t [append $s c]
+set u [copy $s]
+append $s d
+append $u e
+append $t f
+check append-copies [list $s $t $u] {abcd abcf abce}
+
+# A tail call doesn't change what an upeval level refers to: outer's
+# frame is still counted once outer is compiled and tail calls helper.
+proc setter {} { upeval -2 {set r 42} }
+proc helper {} { setter }
+proc outer {} { set r 0; helper }
+set res {}
+for {set i 0} {< $i 4} {incr $i} { set r 1; outer; lappend $res [copy $r] }
+check tailcall-upeval $res {1 1 1 1}
+
+# Hot procs call math builtins directly, with the same results.
+proc addz {a b} { + $a $b }
+proc subz {a b} { - $a $b }
+for {set i 0} {< $i 60} {incr $i} {
+    set r [list [addz -0.0 -0.0] [subz -0.0 0.0]]
+}
+check hot-negative-zero $r [list [+ -0.0 -0.0] [- -0.0 0.0]]
+
+puts "all checks passed"